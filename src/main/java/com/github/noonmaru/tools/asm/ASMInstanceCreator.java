@@ -22,28 +22,76 @@ import org.objectweb.asm.Type;
 
 import java.lang.reflect.Constructor;
 import java.lang.reflect.Modifier;
-import java.util.HashMap;
-import java.util.function.Supplier;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.*;
 
 import static org.objectweb.asm.Opcodes.*;
 
 
 public final class ASMInstanceCreator
 {
-	private static final String[] SUPPLIER_DESC = new String[]{Type.getInternalName(Supplier.class)};
-	private static final String GET_DESC = Type.getMethodDescriptor(Supplier.class.getMethods()[0]);
-	private static int ids;
+	private static final String OBJECT_NAME = Type.getInternalName(Object.class);
+	private static final String INVOKER_NAME = Type.getInternalName(ConstructorInvoker.class);
+	private static final AtomicInteger IDS = new AtomicInteger();
 
-	private static final HashMap<Class<?>, Supplier<?>> CACHE = new HashMap<>();
+	private static final ClassValue<CreatorHolder> CACHE = new ClassValue<CreatorHolder>()
+	{
+		@Override
+		protected CreatorHolder computeValue(Class<?> type)
+		{
+			return new CreatorHolder(type);
+		}
+	};
 
 	@SuppressWarnings("unchecked")
-	public synchronized static <T> Supplier<T> create(Class<T> clazz)
+	public static <T> Supplier<T> create(Class<T> clazz)
 	{
-		Supplier<T> creator = (Supplier<T>) CACHE.get(clazz);
-		
-		if (creator != null)
-			return creator;
+		return (Supplier<T>) CACHE.get(clazz).get();
+	}
+
+	@SuppressWarnings("unchecked")
+	public static <T> ConstructorInvoker<T> createInvoker(Class<T> clazz, Class<?>... parameterTypes)
+	{
+		return (ConstructorInvoker<T>) CACHE.get(clazz).get(parameterTypes);
+	}
+
+	@SuppressWarnings("unchecked")
+	public static <T, A> Function<A, T> createFunction(Class<T> clazz, Class<A> parameterType)
+	{
+		return (Function<A, T>) createInvoker(clazz, parameterType);
+	}
 
+	@SuppressWarnings("unchecked")
+	public static <T, A, B> BiFunction<A, B, T> createBiFunction(Class<T> clazz, Class<A> firstType, Class<B> secondType)
+	{
+		return (BiFunction<A, B, T>) createInvoker(clazz, firstType, secondType);
+	}
+
+	@SuppressWarnings("unchecked")
+	public static <T> IntFunction<T> createIntFunction(Class<T> clazz)
+	{
+		return (IntFunction<T>) createInvoker(clazz, int.class);
+	}
+
+	@SuppressWarnings("unchecked")
+	public static <T> LongFunction<T> createLongFunction(Class<T> clazz)
+	{
+		return (LongFunction<T>) createInvoker(clazz, long.class);
+	}
+
+	@SuppressWarnings("unchecked")
+	public static <T> DoubleFunction<T> createDoubleFunction(Class<T> clazz)
+	{
+		return (DoubleFunction<T>) createInvoker(clazz, double.class);
+	}
+
+	private static ConstructorInvoker<?> generate(Class<?> clazz, Class<?>[] parameterTypes)
+	{
+		ConstructorInvoker<?> invoker = null;
 		int mod = clazz.getModifiers();
 
 		if (!Modifier.isPublic(mod))
@@ -56,25 +104,24 @@ public final class ASMInstanceCreator
 
 		try
 		{
-			byte[] classData = generateClass(name, clazz);
-			creator = (Supplier<T>) ClassDefiner.defineClass(name, classData, clazz.getClassLoader()).newInstance();
-			CACHE.put(clazz, creator);
+			byte[] classData = generateClass(name, clazz, parameterTypes);
+			invoker = (ConstructorInvoker<?>) ClassDefiner.defineClass(name, classData, clazz.getClassLoader()).newInstance();
 		}
 		catch (InstantiationException | IllegalAccessException e)
 		{
 			e.printStackTrace();
 		}
 
-		return creator;
+		return invoker;
 	}
 
-	private static <T> byte[] generateClass(String name, Class<T> clazz)
+	private static byte[] generateClass(String name, Class<?> clazz, Class<?>[] parameterTypes)
 	{
-		Constructor<T> con;
+		Constructor<?> con;
 
 		try
 		{
-			con = clazz.getConstructor();
+			con = clazz.getConstructor(parameterTypes);
 		}
 		catch (NoSuchMethodException e)
 		{
@@ -90,41 +137,220 @@ public final class ASMInstanceCreator
 		if (!Modifier.isPublic(conMod))
 			throw new IllegalArgumentException("No public constructor: " + clazz);
 
+		for (Class<?> parameterType : parameterTypes)
+		{
+			Class<?> type = parameterType;
+
+			while (type.isArray())
+				type = type.getComponentType();
+
+			if (!Modifier.isPublic(type.getModifiers()))
+				throw new IllegalArgumentException("Not a public parameter type: " + parameterType);
+		}
+
 		String desc = name.replace('.', '/');
 		String instType = Type.getInternalName(clazz);
+		String conDesc = Type.getConstructorDescriptor(con);
+		int count = parameterTypes.length;
+
+		List<String> interfaces = new ArrayList<>(3);
+		interfaces.add(INVOKER_NAME);
 
-		ClassWriter cw = new ClassWriter(0);
+		if (count == 0)
+			interfaces.add(Type.getInternalName(Supplier.class));
+		else if (count == 1)
+		{
+			interfaces.add(Type.getInternalName(Function.class));
+
+			Class<?> parameterType = parameterTypes[0];
 
-		cw.visit(V1_6, ACC_PUBLIC | ACC_SUPER, desc, "Ljava/lang/Object;L " + SUPPLIER_DESC[0] + "<L" + instType + ";>;", "java/lang/Object", SUPPLIER_DESC);
+			if (parameterType == int.class)
+				interfaces.add(Type.getInternalName(IntFunction.class));
+			else if (parameterType == long.class)
+				interfaces.add(Type.getInternalName(LongFunction.class));
+			else if (parameterType == double.class)
+				interfaces.add(Type.getInternalName(DoubleFunction.class));
+		}
+		else if (count == 2)
+			interfaces.add(Type.getInternalName(BiFunction.class));
+
+		ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+
+		cw.visit(V1_6, ACC_PUBLIC | ACC_SUPER, desc, null, OBJECT_NAME, interfaces.toArray(new String[0]));
 		cw.visitSource(".dynamic", null);
 
 		{
 			MethodVisitor mv = cw.visitMethod(ACC_PUBLIC, "<init>", "()V", null, null);
 			mv.visitCode();
 			mv.visitVarInsn(ALOAD, 0);
-			mv.visitMethodInsn(INVOKESPECIAL, "java/lang/Object", "<init>", "()V", false);
+			mv.visitMethodInsn(INVOKESPECIAL, OBJECT_NAME, "<init>", "()V", false);
 			mv.visitInsn(RETURN);
-			mv.visitMaxs(1, 1);
+			mv.visitMaxs(0, 0);
+			mv.visitEnd();
+		}
+
+		{
+			MethodVisitor mv = cw.visitMethod(ACC_PUBLIC | ACC_VARARGS, "newInstance", "([Ljava/lang/Object;)Ljava/lang/Object;", null, null);
+			mv.visitCode();
+			mv.visitTypeInsn(NEW, instType);
+			mv.visitInsn(DUP);
+
+			for (int i = 0; i < count; i++)
+			{
+				mv.visitVarInsn(ALOAD, 1);
+				mv.visitLdcInsn(i);
+				mv.visitInsn(AALOAD);
+				visitUnbox(mv, parameterTypes[i]);
+			}
+
+			mv.visitMethodInsn(INVOKESPECIAL, instType, "<init>", conDesc, false);
+			mv.visitInsn(ARETURN);
+			mv.visitMaxs(0, 0);
 			mv.visitEnd();
 		}
 
+		if (count == 0)
 		{
-			MethodVisitor mv = cw.visitMethod(ACC_PUBLIC, "get", GET_DESC, null, null);
+			MethodVisitor mv = cw.visitMethod(ACC_PUBLIC, "get", "()Ljava/lang/Object;", null, null);
 			mv.visitCode();
 			mv.visitTypeInsn(NEW, instType);
 			mv.visitInsn(DUP);
 			mv.visitMethodInsn(INVOKESPECIAL, instType, "<init>", "()V", false);
 			mv.visitInsn(ARETURN);
-			mv.visitMaxs(2, 1);
+			mv.visitMaxs(0, 0);
 			mv.visitEnd();
 		}
+		else if (count <= 2)
+		{
+			MethodVisitor mv = cw.visitMethod(ACC_PUBLIC, "apply", count == 1 ? "(Ljava/lang/Object;)Ljava/lang/Object;" : "(Ljava/lang/Object;Ljava/lang/Object;)Ljava/lang/Object;", null, null);
+			mv.visitCode();
+			mv.visitTypeInsn(NEW, instType);
+			mv.visitInsn(DUP);
+
+			for (int i = 0; i < count; i++)
+			{
+				mv.visitVarInsn(ALOAD, i + 1);
+				visitUnbox(mv, parameterTypes[i]);
+			}
+
+			mv.visitMethodInsn(INVOKESPECIAL, instType, "<init>", conDesc, false);
+			mv.visitInsn(ARETURN);
+			mv.visitMaxs(0, 0);
+			mv.visitEnd();
+		}
+
+		if (count == 1 && parameterTypes[0].isPrimitive() && interfaces.size() == 3)
+		{
+			Type primitiveType = Type.getType(parameterTypes[0]);
+
+			MethodVisitor mv = cw.visitMethod(ACC_PUBLIC, "apply", "(" + primitiveType.getDescriptor() + ")Ljava/lang/Object;", null, null);
+			mv.visitCode();
+			mv.visitTypeInsn(NEW, instType);
+			mv.visitInsn(DUP);
+			mv.visitVarInsn(primitiveType.getOpcode(ILOAD), 1);
+			mv.visitMethodInsn(INVOKESPECIAL, instType, "<init>", conDesc, false);
+			mv.visitInsn(ARETURN);
+			mv.visitMaxs(0, 0);
+			mv.visitEnd();
+		}
+
+		cw.visitEnd();
 
 		return cw.toByteArray();
 	}
 
+	static void visitUnbox(MethodVisitor mv, Class<?> type)
+	{
+		if (type.isPrimitive())
+		{
+			Class<?> wrapper = wrap(type);
+			String wrapperName = Type.getInternalName(wrapper);
+
+			mv.visitTypeInsn(CHECKCAST, wrapperName);
+			mv.visitMethodInsn(INVOKEVIRTUAL, wrapperName, type.getName() + "Value", "()" + Type.getDescriptor(type), false);
+		}
+		else if (type != Object.class)
+			mv.visitTypeInsn(CHECKCAST, Type.getInternalName(type));
+	}
+
+	static Class<?> wrap(Class<?> type)
+	{
+		if (type == boolean.class)
+			return Boolean.class;
+		if (type == byte.class)
+			return Byte.class;
+		if (type == char.class)
+			return Character.class;
+		if (type == short.class)
+			return Short.class;
+		if (type == int.class)
+			return Integer.class;
+		if (type == long.class)
+			return Long.class;
+		if (type == float.class)
+			return Float.class;
+		if (type == double.class)
+			return Double.class;
+
+		return type;
+	}
+
 	private static String generateClassName(Class<?> clazz)
 	{
-		return String.format("%s_%d_%s", Supplier.class, ids++, clazz.getSimpleName());
+		return String.format("%s_%d_%s", ConstructorInvoker.class.getName(), IDS.getAndIncrement(), clazz.getSimpleName());
+	}
+
+	/*
+	 * ClassValue keeps the entry with the class itself, so unloading a plugin class loader also drops its creator.
+	 * The holder is cheap to construct, racing threads agree on a single instance and only generation is locked.
+	 */
+	private static final class CreatorHolder
+	{
+		private static final Class<?>[] NO_PARAMETERS = new Class<?>[0];
+
+		private final Class<?> type;
+
+		private volatile ConstructorInvoker<?> creator;
+
+		private final ConcurrentHashMap<List<Class<?>>, ConstructorInvoker<?>> invokers = new ConcurrentHashMap<>();
+
+		CreatorHolder(Class<?> type)
+		{
+			this.type = type;
+		}
+
+		ConstructorInvoker<?> get()
+		{
+			ConstructorInvoker<?> creator = this.creator;
+
+			if (creator == null)
+			{
+				synchronized (this)
+				{
+					if ((creator = this.creator) == null)
+						this.creator = creator = generate(this.type, NO_PARAMETERS);
+				}
+			}
+
+			return creator;
+		}
+
+		ConstructorInvoker<?> get(Class<?>[] parameterTypes)
+		{
+			if (parameterTypes.length == 0)
+				return get();
+
+			List<Class<?>> key = Arrays.asList(parameterTypes);
+			ConstructorInvoker<?> invoker = this.invokers.get(key);
+
+			if (invoker == null)
+			{
+				Class<?>[] types = parameterTypes.clone();
+				invoker = this.invokers.computeIfAbsent(Arrays.asList(types), k -> generate(this.type, types));
+			}
+
+			return invoker;
+		}
 	}
 
 	private ASMInstanceCreator()
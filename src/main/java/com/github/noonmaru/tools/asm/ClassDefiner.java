@@ -16,26 +16,39 @@
 
 package com.github.noonmaru.tools.asm;
 
-import java.util.IdentityHashMap;
+import java.lang.ref.WeakReference;
+import java.util.WeakHashMap;
 
 public final class ClassDefiner
 {
-	
-	private static final IdentityHashMap<ClassLoader, ASMClassLoader> CACHE = new IdentityHashMap<>();
+	private static final ASMClassLoader BOOTSTRAP_LOADER = new ASMClassLoader();
+
+	/*
+	 * Both key and value are weak: ASMClassLoader references its parent, so a strong value would pin the key.
+	 * The generated classes keep their ASMClassLoader alive for as long as they are in use.
+	 */
+	private static final WeakHashMap<ClassLoader, WeakReference<ASMClassLoader>> CACHE = new WeakHashMap<>();
 
-	static
+	public static Class<?> defineClass(String name, byte[] data, ClassLoader loader)
 	{
-		CACHE.put(null, new ASMClassLoader());
+		return getLoader(loader).defineClass(name, data);
 	}
 
-	public synchronized static Class<?> defineClass(String name, byte[] data, ClassLoader loader)
+	private static ASMClassLoader getLoader(ClassLoader loader)
 	{
-		ASMClassLoader asmLoader = CACHE.get(loader);
+		if (loader == null)
+			return BOOTSTRAP_LOADER;
+
+		synchronized (CACHE)
+		{
+			WeakReference<ASMClassLoader> ref = CACHE.get(loader);
+			ASMClassLoader asmLoader = ref == null ? null : ref.get();
+
+			if (asmLoader == null)
+				CACHE.put(loader, new WeakReference<>(asmLoader = new ASMClassLoader(loader)));
 
-		if (asmLoader == null)
-			CACHE.put(loader, asmLoader = new ASMClassLoader(loader));
-		
-		return asmLoader.defineClass(name, data);
+			return asmLoader;
+		}
 	}
 
 	private static class ASMClassLoader extends ClassLoader
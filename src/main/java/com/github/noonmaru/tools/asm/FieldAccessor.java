@@ -0,0 +1,593 @@
+/*
+ * Copyright (c) 2019 Noonmaru
+ *
+ * Licensed under the General Public License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://opensource.org/licenses/gpl-2.0.php
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.github.noonmaru.tools.asm;
+
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Type;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.objectweb.asm.Opcodes.*;
+
+/**
+ * Index based field access for a class and its superclasses.
+ * <p>
+ * Public fields of public classes are read and written by generated bytecode,
+ * every other field falls back to reflection through the methods of this class.
+ */
+public class FieldAccessor
+{
+	private static final String ACCESSOR_NAME = Type.getInternalName(FieldAccessor.class);
+	private static final Class<?>[] TYPES = {Object.class, boolean.class, byte.class, char.class, short.class, int.class, long.class, float.class, double.class};
+	private static final AtomicInteger IDS = new AtomicInteger();
+
+	private static final ClassValue<FieldAccessor> CACHE = new ClassValue<FieldAccessor>()
+	{
+		@Override
+		protected FieldAccessor computeValue(Class<?> type)
+		{
+			return generate(type);
+		}
+	};
+
+	public static FieldAccessor create(Class<?> clazz)
+	{
+		return CACHE.get(clazz);
+	}
+
+	private final Field[] fields;
+
+	protected FieldAccessor(Field[] fields)
+	{
+		this.fields = fields;
+	}
+
+	public final int getFieldCount()
+	{
+		return this.fields.length;
+	}
+
+	public final Field getField(int index)
+	{
+		return this.fields[index];
+	}
+
+	public final int getIndex(String name)
+	{
+		Field[] fields = this.fields;
+
+		for (int i = fields.length - 1; i >= 0; i--)
+		{
+			if (fields[i].getName().equals(name))
+				return i;
+		}
+
+		throw new IllegalArgumentException("Unable to find field: " + name);
+	}
+
+	public final int getIndex(Field field)
+	{
+		Field[] fields = this.fields;
+
+		for (int i = 0, length = fields.length; i < length; i++)
+		{
+			if (fields[i].equals(field))
+				return i;
+		}
+
+		throw new IllegalArgumentException("Unable to find field: " + field);
+	}
+
+	public Object get(Object instance, int index)
+	{
+		try
+		{
+			return this.fields[index].get(instance);
+		}
+		catch (IllegalAccessException e)
+		{
+			throw new IllegalStateException(e);
+		}
+	}
+
+	public void set(Object instance, int index, Object value)
+	{
+		try
+		{
+			this.fields[index].set(instance, value);
+		}
+		catch (IllegalAccessException e)
+		{
+			throw new IllegalStateException(e);
+		}
+	}
+
+	public boolean getBoolean(Object instance, int index)
+	{
+		try
+		{
+			return this.fields[index].getBoolean(instance);
+		}
+		catch (IllegalAccessException e)
+		{
+			throw new IllegalStateException(e);
+		}
+	}
+
+	public void setBoolean(Object instance, int index, boolean value)
+	{
+		try
+		{
+			this.fields[index].setBoolean(instance, value);
+		}
+		catch (IllegalAccessException e)
+		{
+			throw new IllegalStateException(e);
+		}
+	}
+
+	public byte getByte(Object instance, int index)
+	{
+		try
+		{
+			return this.fields[index].getByte(instance);
+		}
+		catch (IllegalAccessException e)
+		{
+			throw new IllegalStateException(e);
+		}
+	}
+
+	public void setByte(Object instance, int index, byte value)
+	{
+		try
+		{
+			this.fields[index].setByte(instance, value);
+		}
+		catch (IllegalAccessException e)
+		{
+			throw new IllegalStateException(e);
+		}
+	}
+
+	public char getChar(Object instance, int index)
+	{
+		try
+		{
+			return this.fields[index].getChar(instance);
+		}
+		catch (IllegalAccessException e)
+		{
+			throw new IllegalStateException(e);
+		}
+	}
+
+	public void setChar(Object instance, int index, char value)
+	{
+		try
+		{
+			this.fields[index].setChar(instance, value);
+		}
+		catch (IllegalAccessException e)
+		{
+			throw new IllegalStateException(e);
+		}
+	}
+
+	public short getShort(Object instance, int index)
+	{
+		try
+		{
+			return this.fields[index].getShort(instance);
+		}
+		catch (IllegalAccessException e)
+		{
+			throw new IllegalStateException(e);
+		}
+	}
+
+	public void setShort(Object instance, int index, short value)
+	{
+		try
+		{
+			this.fields[index].setShort(instance, value);
+		}
+		catch (IllegalAccessException e)
+		{
+			throw new IllegalStateException(e);
+		}
+	}
+
+	public int getInt(Object instance, int index)
+	{
+		try
+		{
+			return this.fields[index].getInt(instance);
+		}
+		catch (IllegalAccessException e)
+		{
+			throw new IllegalStateException(e);
+		}
+	}
+
+	public void setInt(Object instance, int index, int value)
+	{
+		try
+		{
+			this.fields[index].setInt(instance, value);
+		}
+		catch (IllegalAccessException e)
+		{
+			throw new IllegalStateException(e);
+		}
+	}
+
+	public long getLong(Object instance, int index)
+	{
+		try
+		{
+			return this.fields[index].getLong(instance);
+		}
+		catch (IllegalAccessException e)
+		{
+			throw new IllegalStateException(e);
+		}
+	}
+
+	public void setLong(Object instance, int index, long value)
+	{
+		try
+		{
+			this.fields[index].setLong(instance, value);
+		}
+		catch (IllegalAccessException e)
+		{
+			throw new IllegalStateException(e);
+		}
+	}
+
+	public float getFloat(Object instance, int index)
+	{
+		try
+		{
+			return this.fields[index].getFloat(instance);
+		}
+		catch (IllegalAccessException e)
+		{
+			throw new IllegalStateException(e);
+		}
+	}
+
+	public void setFloat(Object instance, int index, float value)
+	{
+		try
+		{
+			this.fields[index].setFloat(instance, value);
+		}
+		catch (IllegalAccessException e)
+		{
+			throw new IllegalStateException(e);
+		}
+	}
+
+	public double getDouble(Object instance, int index)
+	{
+		try
+		{
+			return this.fields[index].getDouble(instance);
+		}
+		catch (IllegalAccessException e)
+		{
+			throw new IllegalStateException(e);
+		}
+	}
+
+	public void setDouble(Object instance, int index, double value)
+	{
+		try
+		{
+			this.fields[index].setDouble(instance, value);
+		}
+		catch (IllegalAccessException e)
+		{
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static FieldAccessor generate(Class<?> clazz)
+	{
+		ArrayList<Class<?>> supers = new ArrayList<>();
+
+		do
+			supers.add(clazz);
+		while ((clazz = clazz.getSuperclass()) != null);
+
+		ArrayList<Field> list = new ArrayList<>();
+		boolean direct = false;
+
+		for (int i = supers.size() - 1; i >= 0; i--)
+			for (Field field : supers.get(i).getDeclaredFields())
+			{
+				if (field.isSynthetic())
+					continue;
+
+				try
+				{
+					field.setAccessible(true);
+				}
+				catch (RuntimeException e)
+				{
+					// fields of encapsulated platform classes stay inaccessible and fail on use
+				}
+
+				list.add(field);
+				direct |= isDirect(field);
+			}
+
+		Field[] fields = list.toArray(new Field[0]);
+		clazz = supers.get(0);
+
+		if (direct)
+		{
+			String name = String.format("%s_%d_%s", FieldAccessor.class.getName(), IDS.getAndIncrement(), clazz.getSimpleName());
+
+			try
+			{
+				byte[] classData = generateClass(name, fields);
+
+				return (FieldAccessor) ClassDefiner.defineClass(name, classData, clazz.getClassLoader()).getConstructor(Field[].class).newInstance((Object) fields);
+			}
+			catch (InstantiationException | IllegalAccessException | InvocationTargetException | NoSuchMethodException e)
+			{
+				e.printStackTrace();
+			}
+		}
+
+		return new FieldAccessor(fields);
+	}
+
+	private static boolean isDirect(Field field)
+	{
+		if (!Modifier.isPublic(field.getModifiers()) || !Modifier.isPublic(field.getDeclaringClass().getModifiers()))
+			return false;
+
+		Class<?> type = field.getType();
+
+		while (type.isArray())
+			type = type.getComponentType();
+
+		return Modifier.isPublic(type.getModifiers());
+	}
+
+	private static byte[] generateClass(String name, Field[] fields)
+	{
+		ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_FRAMES);
+
+		cw.visit(V1_8, ACC_PUBLIC | ACC_SUPER, name.replace('.', '/'), null, ACCESSOR_NAME, null);
+		cw.visitSource(".dynamic", null);
+
+		{
+			MethodVisitor mv = cw.visitMethod(ACC_PUBLIC, "<init>", "([Ljava/lang/reflect/Field;)V", null, null);
+			mv.visitCode();
+			mv.visitVarInsn(ALOAD, 0);
+			mv.visitVarInsn(ALOAD, 1);
+			mv.visitMethodInsn(INVOKESPECIAL, ACCESSOR_NAME, "<init>", "([Ljava/lang/reflect/Field;)V", false);
+			mv.visitInsn(RETURN);
+			mv.visitMaxs(0, 0);
+			mv.visitEnd();
+		}
+
+		for (Class<?> type : TYPES)
+		{
+			generateGetter(cw, fields, type);
+			generateSetter(cw, fields, type);
+		}
+
+		cw.visitEnd();
+
+		return cw.toByteArray();
+	}
+
+	private static String methodName(String prefix, Class<?> type)
+	{
+		if (type == Object.class)
+			return prefix;
+
+		String typeName = type.getName();
+
+		return prefix + Character.toUpperCase(typeName.charAt(0)) + typeName.substring(1);
+	}
+
+	private static void generateGetter(ClassWriter cw, Field[] fields, Class<?> type)
+	{
+		ArrayList<Integer> indices = new ArrayList<>();
+
+		for (int i = 0; i < fields.length; i++)
+		{
+			Field field = fields[i];
+
+			if (isDirect(field) && (type == Object.class || field.getType() == type))
+				indices.add(i);
+		}
+
+		if (indices.isEmpty())
+			return;
+
+		String name = methodName("get", type);
+		String desc = "(Ljava/lang/Object;I)" + Type.getDescriptor(type);
+		Type returnType = Type.getType(type);
+
+		MethodVisitor mv = cw.visitMethod(ACC_PUBLIC, name, desc, null, null);
+		mv.visitCode();
+
+		Label[] labels = visitSwitch(mv, indices);
+
+		for (int i = 0, size = indices.size(); i < size; i++)
+		{
+			Field field = fields[indices.get(i)];
+			String owner = Type.getInternalName(field.getDeclaringClass());
+			String fieldDesc = Type.getDescriptor(field.getType());
+
+			mv.visitLabel(labels[i]);
+
+			if (Modifier.isStatic(field.getModifiers()))
+				mv.visitFieldInsn(GETSTATIC, owner, field.getName(), fieldDesc);
+			else
+			{
+				mv.visitVarInsn(ALOAD, 1);
+				mv.visitTypeInsn(CHECKCAST, owner);
+				mv.visitFieldInsn(GETFIELD, owner, field.getName(), fieldDesc);
+			}
+
+			if (type == Object.class)
+				visitBox(mv, field.getType());
+
+			mv.visitInsn(returnType.getOpcode(IRETURN));
+		}
+
+		mv.visitLabel(labels[labels.length - 1]);
+		mv.visitVarInsn(ALOAD, 0);
+		mv.visitVarInsn(ALOAD, 1);
+		mv.visitVarInsn(ILOAD, 2);
+		mv.visitMethodInsn(INVOKESPECIAL, ACCESSOR_NAME, name, desc, false);
+		mv.visitInsn(returnType.getOpcode(IRETURN));
+		mv.visitMaxs(0, 0);
+		mv.visitEnd();
+	}
+
+	private static void generateSetter(ClassWriter cw, Field[] fields, Class<?> type)
+	{
+		ArrayList<Integer> indices = new ArrayList<>();
+
+		for (int i = 0; i < fields.length; i++)
+		{
+			Field field = fields[i];
+
+			if (isDirect(field) && !Modifier.isFinal(field.getModifiers()) && (type == Object.class || field.getType() == type))
+				indices.add(i);
+		}
+
+		if (indices.isEmpty())
+			return;
+
+		String name = methodName("set", type);
+		String desc = "(Ljava/lang/Object;I" + Type.getDescriptor(type) + ")V";
+		Type valueType = Type.getType(type);
+
+		MethodVisitor mv = cw.visitMethod(ACC_PUBLIC, name, desc, null, null);
+		mv.visitCode();
+
+		Label[] labels = visitSwitch(mv, indices);
+
+		for (int i = 0, size = indices.size(); i < size; i++)
+		{
+			Field field = fields[indices.get(i)];
+			String owner = Type.getInternalName(field.getDeclaringClass());
+			String fieldDesc = Type.getDescriptor(field.getType());
+			boolean isStatic = Modifier.isStatic(field.getModifiers());
+
+			mv.visitLabel(labels[i]);
+
+			if (type == Object.class && field.getType() != Object.class)
+				visitTypeCheck(mv, field.getType(), labels[labels.length - 1]);
+
+			if (!isStatic)
+			{
+				mv.visitVarInsn(ALOAD, 1);
+				mv.visitTypeInsn(CHECKCAST, owner);
+			}
+
+			mv.visitVarInsn(valueType.getOpcode(ILOAD), 3);
+
+			if (type == Object.class)
+				ASMInstanceCreator.visitUnbox(mv, field.getType());
+
+			mv.visitFieldInsn(isStatic ? PUTSTATIC : PUTFIELD, owner, field.getName(), fieldDesc);
+			mv.visitInsn(RETURN);
+		}
+
+		mv.visitLabel(labels[labels.length - 1]);
+		mv.visitVarInsn(ALOAD, 0);
+		mv.visitVarInsn(ALOAD, 1);
+		mv.visitVarInsn(ILOAD, 2);
+		mv.visitVarInsn(valueType.getOpcode(ILOAD), 3);
+		mv.visitMethodInsn(INVOKESPECIAL, ACCESSOR_NAME, name, desc, false);
+		mv.visitInsn(RETURN);
+		mv.visitMaxs(0, 0);
+		mv.visitEnd();
+	}
+
+	/*
+	 * Values that are not exactly of the field's (wrapper) type go to the reflective setter,
+	 * which widens e.g. an Integer into a long field and throws IllegalArgumentException like Field.set.
+	 */
+	private static void visitTypeCheck(MethodVisitor mv, Class<?> fieldType, Label fallback)
+	{
+		Label store = new Label();
+
+		if (!fieldType.isPrimitive())
+		{
+			mv.visitVarInsn(ALOAD, 3);
+			mv.visitJumpInsn(IFNULL, store);
+		}
+
+		mv.visitVarInsn(ALOAD, 3);
+		mv.visitTypeInsn(INSTANCEOF, Type.getInternalName(fieldType.isPrimitive() ? ASMInstanceCreator.wrap(fieldType) : fieldType));
+		mv.visitJumpInsn(IFEQ, fallback);
+		mv.visitLabel(store);
+	}
+
+	/**
+	 * @return labels for each index followed by the default label
+	 */
+	private static Label[] visitSwitch(MethodVisitor mv, ArrayList<Integer> indices)
+	{
+		int size = indices.size();
+		int[] keys = new int[size];
+		Label[] labels = new Label[size + 1];
+
+		for (int i = 0; i < size; i++)
+		{
+			keys[i] = indices.get(i);
+			labels[i] = new Label();
+		}
+
+		Label defaultLabel = labels[size] = new Label();
+
+		mv.visitVarInsn(ILOAD, 2);
+		mv.visitLookupSwitchInsn(defaultLabel, keys, Arrays.copyOf(labels, size));
+
+		return labels;
+	}
+
+	private static void visitBox(MethodVisitor mv, Class<?> type)
+	{
+		if (type.isPrimitive())
+		{
+			String wrapperName = Type.getInternalName(ASMInstanceCreator.wrap(type));
+
+			mv.visitMethodInsn(INVOKESTATIC, wrapperName, "valueOf", "(" + Type.getDescriptor(type) + ")L" + wrapperName + ";", false);
+		}
+	}
+}
@@ -0,0 +1,204 @@
+/*
+ * Copyright (c) 2019 Noonmaru
+ *
+ * Licensed under the General Public License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://opensource.org/licenses/gpl-2.0.php
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.github.noonmaru.tools.gson;
+
+import com.google.gson.JsonElement;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.*;
+
+/**
+ * Write-behind queue for {@link JsonIO#save(JsonElement, File, boolean)}.
+ * <p>
+ * The first save of a file schedules a write after the delay, further saves of the same file
+ * within that window only replace the element to write. Elements are serialized on the writer thread,
+ * callers that keep modifying an element while it is queued should pass a copy.
+ * Once closed, saves are written on the calling thread.
+ * <p>
+ * Writes that fail are collected and thrown by the next {@link #flush()} or {@link #close()}.
+ */
+public final class AsyncJsonSaver implements Closeable
+{
+	private final long delay;
+
+	private final TimeUnit unit;
+
+	private final boolean sync;
+
+	private final ScheduledThreadPoolExecutor executor;
+
+	private final ConcurrentHashMap<Path, JsonElement> pending = new ConcurrentHashMap<>();
+
+	private final ConcurrentLinkedQueue<IOException> failures = new ConcurrentLinkedQueue<>();
+
+	private volatile boolean closed;
+
+	public AsyncJsonSaver(long delay, TimeUnit unit, boolean sync)
+	{
+		this.delay = delay;
+		this.unit = unit;
+		this.sync = sync;
+		this.executor = new ScheduledThreadPoolExecutor(1, r -> {
+			Thread thread = new Thread(r, "AsyncJsonSaver");
+			thread.setDaemon(true);
+
+			return thread;
+		});
+		// close() writes what is pending itself instead of waiting out the delay
+		this.executor.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+	}
+
+	public void save(JsonElement json, File file)
+	{
+		Path path = file.toPath().toAbsolutePath();
+
+		if (this.closed)
+		{
+			this.pending.remove(path);
+			write(path, json);
+			return;
+		}
+
+		if (this.pending.put(path, json) == null)
+		{
+			try
+			{
+				this.executor.schedule(() -> write(path), this.delay, this.unit);
+			}
+			catch (RejectedExecutionException e)
+			{
+				// closed meanwhile
+				write(path);
+			}
+		}
+	}
+
+	private void write(Path path)
+	{
+		JsonElement json = this.pending.remove(path);
+
+		if (json != null)
+			write(path, json);
+	}
+
+	private void write(Path path, JsonElement json)
+	{
+		try
+		{
+			JsonIO.save(json, path.toFile(), this.sync);
+		}
+		catch (IOException | RuntimeException e)
+		{
+			e.printStackTrace();
+			this.failures.add(new IOException("Failed to save " + path, e));
+		}
+	}
+
+	/*
+	 * Throws the failures collected so far, the first one with the rest suppressed.
+	 */
+	private void throwFailures() throws IOException
+	{
+		IOException first = this.failures.poll();
+
+		if (first == null)
+			return;
+
+		IOException failure;
+
+		while ((failure = this.failures.poll()) != null)
+			first.addSuppressed(failure);
+
+		throw first;
+	}
+
+	/**
+	 * Writes every queued file now and waits until they are on disk.
+	 *
+	 * @throws IOException if any write since the last flush failed
+	 */
+	public void flush() throws IOException
+	{
+		if (this.executor.isShutdown())
+		{
+			drain();
+			throwFailures();
+			return;
+		}
+
+		try
+		{
+			this.executor.submit(this::drain).get();
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+		}
+		catch (ExecutionException | RejectedExecutionException e)
+		{
+			e.printStackTrace();
+		}
+
+		throwFailures();
+	}
+
+	private void drain()
+	{
+		for (Path path : this.pending.keySet())
+			write(path);
+	}
+
+	/**
+	 * Writes every queued file and stops the writer thread.
+	 *
+	 * @throws IOException if any write since the last flush failed
+	 */
+	@Override
+	public void close() throws IOException
+	{
+		if (this.closed)
+		{
+			throwFailures();
+			return;
+		}
+
+		this.closed = true;
+
+		Future<?> drain = this.executor.submit(this::drain);
+		this.executor.shutdown();
+
+		try
+		{
+			drain.get();
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+		}
+		catch (ExecutionException e)
+		{
+			e.printStackTrace();
+		}
+
+		// saves that were queued while closing, their delayed writes were dropped by the shutdown
+		drain();
+		throwFailures();
+	}
+}
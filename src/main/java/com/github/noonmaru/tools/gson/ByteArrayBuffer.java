@@ -0,0 +1,170 @@
+/*
+ * Copyright (c) 2019 Noonmaru
+ *
+ * Licensed under the General Public License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://opensource.org/licenses/gpl-2.0.php
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.github.noonmaru.tools.gson;
+
+import java.io.OutputStream;
+import java.io.Writer;
+import java.util.Arrays;
+
+/*
+ * Growable byte array that is reused per thread by JsonIO.
+ * The writer view encodes UTF-8 directly into the array without intermediate char or byte buffers.
+ */
+final class ByteArrayBuffer extends OutputStream
+{
+	private byte[] buf;
+
+	private int count;
+
+	private final Utf8Writer writer = new Utf8Writer();
+
+	ByteArrayBuffer(int capacity)
+	{
+		this.buf = new byte[capacity];
+	}
+
+	byte[] array()
+	{
+		return this.buf;
+	}
+
+	int size()
+	{
+		return this.count;
+	}
+
+	int capacity()
+	{
+		return this.buf.length;
+	}
+
+	Writer writer()
+	{
+		return this.writer;
+	}
+
+	void reset()
+	{
+		this.count = 0;
+		this.writer.highSurrogate = 0;
+	}
+
+	private void ensureCapacity(int capacity)
+	{
+		if (capacity > this.buf.length)
+			this.buf = Arrays.copyOf(this.buf, Math.max(capacity, this.buf.length << 1));
+	}
+
+	@Override
+	public void write(int b)
+	{
+		ensureCapacity(this.count + 1);
+		this.buf[this.count++] = (byte) b;
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len)
+	{
+		ensureCapacity(this.count + len);
+		System.arraycopy(b, off, this.buf, this.count, len);
+		this.count += len;
+	}
+
+	private final class Utf8Writer extends Writer
+	{
+		char highSurrogate;
+
+		@Override
+		public void write(int c)
+		{
+			ensureCapacity(count + 4);
+			encode((char) c);
+		}
+
+		@Override
+		public void write(char[] cbuf, int off, int len)
+		{
+			ensureCapacity(count + len * 3 + 1);
+
+			for (int i = off, end = off + len; i < end; i++)
+				encode(cbuf[i]);
+		}
+
+		@Override
+		public void write(String str, int off, int len)
+		{
+			ensureCapacity(count + len * 3 + 1);
+
+			for (int i = off, end = off + len; i < end; i++)
+				encode(str.charAt(i));
+		}
+
+		private void encode(char c)
+		{
+			byte[] buf = ByteArrayBuffer.this.buf;
+			int count = ByteArrayBuffer.this.count;
+
+			if (this.highSurrogate != 0)
+			{
+				char high = this.highSurrogate;
+				this.highSurrogate = 0;
+
+				if (Character.isLowSurrogate(c))
+				{
+					int codePoint = Character.toCodePoint(high, c);
+					buf[count++] = (byte) (0xF0 | (codePoint >> 18));
+					buf[count++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+					buf[count++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+					buf[count++] = (byte) (0x80 | (codePoint & 0x3F));
+					ByteArrayBuffer.this.count = count;
+
+					return;
+				}
+
+				buf[count++] = '?';
+			}
+
+			if (c < 0x80)
+				buf[count++] = (byte) c;
+			else if (c < 0x800)
+			{
+				buf[count++] = (byte) (0xC0 | (c >> 6));
+				buf[count++] = (byte) (0x80 | (c & 0x3F));
+			}
+			else if (Character.isHighSurrogate(c))
+				this.highSurrogate = c;
+			else if (Character.isLowSurrogate(c))
+				buf[count++] = '?';
+			else
+			{
+				buf[count++] = (byte) (0xE0 | (c >> 12));
+				buf[count++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+				buf[count++] = (byte) (0x80 | (c & 0x3F));
+			}
+
+			ByteArrayBuffer.this.count = count;
+		}
+
+		@Override
+		public void flush()
+		{}
+
+		@Override
+		public void close()
+		{}
+	}
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright (c) 2019 Noonmaru
+ *
+ * Licensed under the General Public License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://opensource.org/licenses/gpl-2.0.php
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.github.noonmaru.tools.gson;
+
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+
+/*
+ * Decodes UTF-8 straight out of a heap or mapped buffer, a leading byte order mark is skipped.
+ */
+final class ByteBufferReader extends Reader
+{
+	private final ByteBuffer buffer;
+
+	private final CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder().onMalformedInput(CodingErrorAction.REPLACE).onUnmappableCharacter(CodingErrorAction.REPLACE);
+
+	private final CharBuffer chars = CharBuffer.allocate(8192);
+
+	private boolean endOfInput;
+
+	private Runnable closeAction;
+
+	ByteBufferReader(ByteBuffer buffer)
+	{
+		this(buffer, null);
+	}
+
+	ByteBufferReader(ByteBuffer buffer, Runnable closeAction)
+	{
+		if (buffer.remaining() >= 3 && buffer.get(buffer.position()) == (byte) 0xEF && buffer.get(buffer.position() + 1) == (byte) 0xBB && buffer.get(buffer.position() + 2) == (byte) 0xBF)
+			buffer.position(buffer.position() + 3);
+
+		this.buffer = buffer;
+		this.closeAction = closeAction;
+		this.chars.flip();
+	}
+
+	@Override
+	public int read(char[] cbuf, int off, int len)
+	{
+		if (len == 0)
+			return 0;
+
+		CharBuffer chars = this.chars;
+
+		if (!chars.hasRemaining() && !fill())
+			return -1;
+
+		int count = Math.min(len, chars.remaining());
+		chars.get(cbuf, off, count);
+
+		return count;
+	}
+
+	private boolean fill()
+	{
+		CharBuffer chars = this.chars;
+		chars.clear();
+
+		if (!this.endOfInput && this.decoder.decode(this.buffer, chars, true).isUnderflow())
+		{
+			this.decoder.flush(chars);
+			this.endOfInput = true;
+		}
+
+		chars.flip();
+
+		return chars.hasRemaining();
+	}
+
+	@Override
+	public void close()
+	{
+		Runnable closeAction = this.closeAction;
+
+		if (closeAction != null)
+		{
+			this.closeAction = null;
+			closeAction.run();
+		}
+	}
+}
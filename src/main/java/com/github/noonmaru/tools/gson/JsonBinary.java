@@ -0,0 +1,272 @@
+/*
+ * Copyright (c) 2019 Noonmaru
+ *
+ * Licensed under the General Public License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://opensource.org/licenses/gpl-2.0.php
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.github.noonmaru.tools.gson;
+
+import com.google.gson.*;
+import com.google.gson.internal.LazilyParsedNumber;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+/*
+ * Tagged binary encoding of the JsonElement model.
+ * Integral numbers are zigzag varints, numbers that fit neither long nor double exactly keep their text.
+ */
+final class JsonBinary
+{
+	static final byte[] MAGIC = {0, 'J', 'B', 1};
+
+	private static final int NULL = 0;
+	private static final int FALSE = 1;
+	private static final int TRUE = 2;
+	private static final int INTEGER = 3;
+	private static final int FLOAT = 4;
+	private static final int DOUBLE = 5;
+	private static final int NUMBER = 6;
+	private static final int STRING = 7;
+	private static final int ARRAY = 8;
+	private static final int OBJECT = 9;
+
+	static boolean isBinary(byte[] header)
+	{
+		for (int i = 0; i < MAGIC.length; i++)
+		{
+			if (header[i] != MAGIC[i])
+				return false;
+		}
+
+		return true;
+	}
+
+	static void write(JsonElement json, OutputStream out) throws IOException
+	{
+		DataOutputStream data = new DataOutputStream(out);
+		data.write(MAGIC);
+		writeElement(json, data);
+		data.flush();
+	}
+
+	private static void writeElement(JsonElement json, DataOutputStream out) throws IOException
+	{
+		if (json == null || json.isJsonNull())
+			out.writeByte(NULL);
+		else if (json.isJsonObject())
+		{
+			JsonObject object = json.getAsJsonObject();
+			out.writeByte(OBJECT);
+			writeVarInt(out, object.size());
+
+			for (Map.Entry<String, JsonElement> entry : object.entrySet())
+			{
+				writeString(out, entry.getKey());
+				writeElement(entry.getValue(), out);
+			}
+		}
+		else if (json.isJsonArray())
+		{
+			JsonArray array = json.getAsJsonArray();
+			int size = array.size();
+			out.writeByte(ARRAY);
+			writeVarInt(out, size);
+
+			for (int i = 0; i < size; i++)
+				writeElement(array.get(i), out);
+		}
+		else
+		{
+			JsonPrimitive primitive = json.getAsJsonPrimitive();
+
+			if (primitive.isBoolean())
+				out.writeByte(primitive.getAsBoolean() ? TRUE : FALSE);
+			else if (primitive.isNumber())
+				writeNumber(out, primitive.getAsNumber());
+			else
+			{
+				out.writeByte(STRING);
+				writeString(out, primitive.getAsString());
+			}
+		}
+	}
+
+	private static void writeNumber(DataOutputStream out, Number number) throws IOException
+	{
+		if (number instanceof Integer || number instanceof Long || number instanceof Short || number instanceof Byte)
+		{
+			out.writeByte(INTEGER);
+			writeVarLong(out, number.longValue());
+		}
+		else if (number instanceof Double)
+		{
+			out.writeByte(DOUBLE);
+			out.writeDouble(number.doubleValue());
+		}
+		else if (number instanceof Float)
+		{
+			out.writeByte(FLOAT);
+			out.writeFloat(number.floatValue());
+		}
+		else
+		{
+			String text = number.toString();
+
+			try
+			{
+				long value = Long.parseLong(text);
+				out.writeByte(INTEGER);
+				writeVarLong(out, value);
+			}
+			catch (NumberFormatException e)
+			{
+				out.writeByte(NUMBER);
+				writeString(out, text);
+			}
+		}
+	}
+
+	private static void writeString(DataOutputStream out, String s) throws IOException
+	{
+		byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+		writeVarInt(out, bytes.length);
+		out.write(bytes);
+	}
+
+	private static void writeVarInt(DataOutputStream out, int value) throws IOException
+	{
+		while ((value & ~0x7F) != 0)
+		{
+			out.writeByte((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+
+		out.writeByte(value);
+	}
+
+	private static void writeVarLong(DataOutputStream out, long value) throws IOException
+	{
+		value = (value << 1) ^ (value >> 63);
+
+		while ((value & ~0x7FL) != 0)
+		{
+			out.writeByte(((int) value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+
+		out.writeByte((int) value);
+	}
+
+	/**
+	 * Reads an element, the magic header must already be consumed.
+	 */
+	static JsonElement read(InputStream in) throws IOException
+	{
+		return readElement(new DataInputStream(in));
+	}
+
+	private static JsonElement readElement(DataInputStream in) throws IOException
+	{
+		int tag = in.readUnsignedByte();
+
+		switch (tag)
+		{
+			case NULL:
+				return JsonNull.INSTANCE;
+			case FALSE:
+				return new JsonPrimitive(false);
+			case TRUE:
+				return new JsonPrimitive(true);
+			case INTEGER:
+				return new JsonPrimitive(readVarLong(in));
+			case FLOAT:
+				return new JsonPrimitive(in.readFloat());
+			case DOUBLE:
+				return new JsonPrimitive(in.readDouble());
+			case NUMBER:
+				return new JsonPrimitive(new LazilyParsedNumber(readString(in)));
+			case STRING:
+				return new JsonPrimitive(readString(in));
+			case ARRAY:
+			{
+				int size = readVarInt(in);
+				JsonArray array = new JsonArray();
+
+				for (int i = 0; i < size; i++)
+					array.add(readElement(in));
+
+				return array;
+			}
+			case OBJECT:
+			{
+				int size = readVarInt(in);
+				JsonObject object = new JsonObject();
+
+				for (int i = 0; i < size; i++)
+				{
+					String name = readString(in);
+					object.add(name, readElement(in));
+				}
+
+				return object;
+			}
+			default:
+				throw new JsonParseException("Unknown binary tag " + tag);
+		}
+	}
+
+	private static String readString(DataInputStream in) throws IOException
+	{
+		byte[] bytes = new byte[readVarInt(in)];
+		in.readFully(bytes);
+
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	private static int readVarInt(DataInputStream in) throws IOException
+	{
+		int value = 0;
+
+		for (int shift = 0; shift < 32; shift += 7)
+		{
+			int b = in.readUnsignedByte();
+			value |= (b & 0x7F) << shift;
+
+			if ((b & 0x80) == 0)
+				return value;
+		}
+
+		throw new JsonParseException("Malformed varint");
+	}
+
+	private static long readVarLong(DataInputStream in) throws IOException
+	{
+		long value = 0;
+
+		for (int shift = 0; shift < 64; shift += 7)
+		{
+			int b = in.readUnsignedByte();
+			value |= (long) (b & 0x7F) << shift;
+
+			if ((b & 0x80) == 0)
+				return (value >>> 1) ^ -(value & 1);
+		}
+
+		throw new JsonParseException("Malformed varint");
+	}
+
+	private JsonBinary()
+	{}
+}
@@ -16,34 +16,103 @@
 
 package com.github.noonmaru.tools.gson;
 
-import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
-import com.google.gson.JsonElement;
-import com.google.gson.JsonParser;
+import com.google.gson.*;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
 
 
 public final class JsonIO
 {
-	private static Gson gson;
-	
-	private static JsonParser parser;
-	
+	private static final long MAPPED_THRESHOLD = 1L << 20;
+
+	private static final AtomicLong TEMP_IDS = new AtomicLong();
+
+	private static final int MAX_STAMPS = 4096;
+
+	private static final ConcurrentHashMap<Path, FileStamp> STAMPS = new ConcurrentHashMap<>();
+
+	/*
+	 * Coarsest modification time granularity of common file systems (FAT, HFS+, some network mounts).
+	 * An edit this close to a stamp can keep both size and time, so such stamps are checked against the bytes.
+	 */
+	private static final long RACY_MILLIS = 2000L;
+
+	private static final Gson GSON = new GsonBuilder().setPrettyPrinting().create();
+
+	private static final Gson COMPACT_GSON = new GsonBuilder().create();
+
+	private static final JsonParser PARSER = new JsonParser();
+
+	private static final int MAX_RETAINED_BUFFER = 1 << 20;
+
+	/*
+	 * Buffers are taken out of the thread local while in use,
+	 * so a nested call on the same thread simply allocates its own.
+	 */
+	private static final ThreadLocal<ByteArrayBuffer> WRITE_BUFFERS = new ThreadLocal<>();
+
+	private static final ThreadLocal<ByteBuffer> READ_BUFFERS = new ThreadLocal<>();
+
 	private static Gson getGson()
 	{
-		if (gson == null)
-			gson = new GsonBuilder().setPrettyPrinting().create();
-		
-		return gson;
+		return GSON;
+	}
+
+	private static Gson getGson(JsonFormat format)
+	{
+		return format == JsonFormat.PRETTY ? GSON : COMPACT_GSON;
 	}
 	
 	public static JsonParser getParser()
 	{
-		if (parser == null)
-			parser = new JsonParser();
-		
-		return parser;
+		return PARSER;
+	}
+
+	private static ByteArrayBuffer borrowWriteBuffer()
+	{
+		ByteArrayBuffer buffer = WRITE_BUFFERS.get();
+
+		if (buffer == null)
+			return new ByteArrayBuffer(8192);
+
+		WRITE_BUFFERS.set(null);
+		buffer.reset();
+
+		return buffer;
+	}
+
+	private static void releaseWriteBuffer(ByteArrayBuffer buffer)
+	{
+		if (buffer.capacity() <= MAX_RETAINED_BUFFER)
+			WRITE_BUFFERS.set(buffer);
+	}
+
+	private static ByteBuffer borrowReadBuffer(int capacity)
+	{
+		ByteBuffer buffer = READ_BUFFERS.get();
+
+		if (buffer == null || buffer.capacity() < capacity)
+			return ByteBuffer.allocate(Math.max(capacity, 8192));
+
+		READ_BUFFERS.set(null);
+		buffer.clear();
+
+		return buffer;
 	}
 	
 	@SuppressWarnings("unchecked")
@@ -52,16 +121,25 @@ public final class JsonIO
 		return (T) getParser().parse(s);
 	}
 	
+	/**
+	 * Loads text, binary or gzip compressed json, the format is detected from the first bytes.
+	 */
 	public static <T extends JsonElement> T load(File file) throws IOException
 	{
 		if (!file.exists())
 			return null;
+
+		if (!readFormat(file.toPath()).isText())
+			try (InputStream in = Files.newInputStream(file.toPath()))
+			{
+				return load(in);
+			}
 		
-		BufferedReader reader = null;
+		Reader reader = null;
 		
 		try
 		{
-			reader = new BufferedReader(new FileReader(file));
+			reader = openReader(file);
 			
 			return load(reader); 
 		}
@@ -79,38 +157,487 @@ public final class JsonIO
 	{
 		return (T) getParser().parse(reader);
 	}
+
+	@SuppressWarnings("unchecked")
+	public static <T extends JsonElement> T load(InputStream in) throws IOException
+	{
+		BufferedInputStream buffered = new BufferedInputStream(in, 1 << 16);
+		byte[] header = new byte[4];
+
+		buffered.mark(header.length);
+
+		for (int offset = 0, count; offset < header.length && (count = buffered.read(header, offset, header.length - offset)) != -1; )
+			offset += count;
+
+		buffered.reset();
+
+		JsonFormat format = detectFormat(header);
+
+		if (format == JsonFormat.BINARY_GZIP)
+			return load(new GZIPInputStream(buffered, 1 << 16));
+
+		if (format == JsonFormat.BINARY)
+		{
+			buffered.skip(header.length);
+
+			return (T) JsonBinary.read(buffered);
+		}
+
+		return load(new InputStreamReader(buffered, StandardCharsets.UTF_8));
+	}
+
+	static JsonFormat readFormat(Path path) throws IOException
+	{
+		ByteBuffer header = ByteBuffer.allocate(4);
+
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ))
+		{
+			while (header.hasRemaining() && channel.read(header) != -1)
+			{}
+		}
+
+		return detectFormat(header.array());
+	}
+
+	/*
+	 * Gzip streams are reported as BINARY_GZIP whatever they hold, they are detected again once decompressed.
+	 */
+	private static JsonFormat detectFormat(byte[] header)
+	{
+		if (header[0] == (byte) 0x1F && header[1] == (byte) 0x8B)
+			return JsonFormat.BINARY_GZIP;
+
+		if (JsonBinary.isBinary(header))
+			return JsonFormat.BINARY;
+
+		return JsonFormat.PRETTY;
+	}
 	
+	/*
+	 * Files are always decoded as UTF-8. Small files are read into a heap buffer reused per thread,
+	 * large ones are memory mapped and decoded in place without copying the bytes to the heap.
+	 */
+	private static Reader openReader(File file) throws IOException
+	{
+		Path path = file.toPath();
+
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ))
+		{
+			long size = channel.size();
+
+			if (size < MAPPED_THRESHOLD)
+			{
+				ByteBuffer buffer = borrowReadBuffer((int) size);
+				buffer.limit((int) size);
+
+				while (buffer.hasRemaining() && channel.read(buffer) != -1)
+				{}
+
+				buffer.flip();
+
+				return new ByteBufferReader(buffer, () -> READ_BUFFERS.set(buffer));
+			}
+
+			if (size <= Integer.MAX_VALUE)
+				return new ByteBufferReader(channel.map(FileChannel.MapMode.READ_ONLY, 0, size));
+		}
+
+		return new BufferedReader(new InputStreamReader(Files.newInputStream(path), StandardCharsets.UTF_8), 1 << 16);
+	}
+
+	/**
+	 * Reads only the given '/' separated paths, every other value is skipped without being built.
+	 *
+	 * @return an object holding the selected values at their original paths, null if the file does not exist
+	 */
+	public static JsonObject select(File file, String... paths) throws IOException
+	{
+		if (!file.exists())
+			return null;
+
+		try (Reader reader = openReader(file))
+		{
+			return select(reader, paths);
+		}
+	}
+
+	public static JsonObject select(Reader reader, String... paths) throws IOException
+	{
+		PathNode root = new PathNode();
+
+		for (String path : paths)
+		{
+			PathNode node = root;
+
+			for (String name : path.split("/"))
+			{
+				if (!name.isEmpty())
+					node = node.child(name);
+			}
+
+			node.selected = true;
+		}
+
+		JsonReader jsonReader = new JsonReader(reader);
+		jsonReader.setLenient(true);
+
+		if (root.selected)
+			return getParser().parse(jsonReader).getAsJsonObject();
+
+		return select(jsonReader, root);
+	}
+
+	private static JsonObject select(JsonReader reader, PathNode node) throws IOException
+	{
+		JsonObject result = new JsonObject();
+
+		reader.beginObject();
+
+		while (reader.hasNext())
+		{
+			String name = reader.nextName();
+			PathNode child = node.children == null ? null : node.children.get(name);
+
+			if (child == null)
+				reader.skipValue();
+			else if (child.selected)
+				result.add(name, getParser().parse(reader));
+			else if (reader.peek() == JsonToken.BEGIN_OBJECT)
+			{
+				JsonObject value = select(reader, child);
+
+				if (value.size() > 0)
+					result.add(name, value);
+			}
+			else
+				reader.skipValue();
+		}
+
+		reader.endObject();
+
+		return result;
+	}
+
+	/**
+	 * Streams the value at the given '/' separated path one element at a time.
+	 * Arrays yield their elements, objects yield their values and anything else is passed as is.
+	 * Only the current element is held in memory.
+	 */
+	public static void forEach(File file, String path, Consumer<? super JsonElement> action) throws IOException
+	{
+		if (!file.exists())
+			return;
+
+		try (Reader reader = openReader(file))
+		{
+			forEach(reader, path, action);
+		}
+	}
+
+	public static void forEach(Reader reader, String path, Consumer<? super JsonElement> action) throws IOException
+	{
+		JsonReader jsonReader = new JsonReader(reader);
+		jsonReader.setLenient(true);
+
+		find:
+		for (String name : path.split("/"))
+		{
+			if (name.isEmpty())
+				continue;
+
+			if (jsonReader.peek() != JsonToken.BEGIN_OBJECT)
+				return;
+
+			jsonReader.beginObject();
+
+			while (jsonReader.hasNext())
+			{
+				if (name.equals(jsonReader.nextName()))
+					continue find;
+
+				jsonReader.skipValue();
+			}
+
+			return;
+		}
+
+		JsonToken token = jsonReader.peek();
+
+		if (token == JsonToken.BEGIN_ARRAY)
+		{
+			jsonReader.beginArray();
+
+			while (jsonReader.hasNext())
+				action.accept(getParser().parse(jsonReader));
+		}
+		else if (token == JsonToken.BEGIN_OBJECT)
+		{
+			jsonReader.beginObject();
+
+			while (jsonReader.hasNext())
+			{
+				jsonReader.nextName();
+				action.accept(getParser().parse(jsonReader));
+			}
+		}
+		else
+			action.accept(getParser().parse(jsonReader));
+	}
+
 	public static String save(JsonElement json)
 	{
 		return getGson().toJson(json);
 	}
+
+	public static String save(JsonElement json, JsonFormat format)
+	{
+		if (!format.isText())
+			throw new IllegalArgumentException("Not a text format: " + format);
+
+		return getGson(format).toJson(json);
+	}
+
+	/*
+	 * Not an overload of save, a PrintStream is also an Appendable and save(json, System.out) would be ambiguous.
+	 */
+	public static void write(JsonElement json, OutputStream out) throws IOException
+	{
+		write(json, out, JsonFormat.PRETTY);
+	}
+
+	public static void write(JsonElement json, OutputStream out, JsonFormat format) throws IOException
+	{
+		if (format.isText())
+		{
+			ByteArrayBuffer buffer = borrowWriteBuffer();
+
+			try
+			{
+				getGson(format).toJson(json, buffer.writer());
+				out.write(buffer.array(), 0, buffer.size());
+			}
+			finally
+			{
+				releaseWriteBuffer(buffer);
+			}
+		}
+		else if (format == JsonFormat.BINARY)
+			JsonBinary.write(json, out);
+		else
+		{
+			GZIPOutputStream gzip = new GZIPOutputStream(out, 1 << 16);
+			JsonBinary.write(json, gzip);
+			gzip.finish();
+		}
+	}
 	
 	public static void save(JsonElement json, File file) throws IOException
 	{
-		File tempFile = new File(file.getPath() + ".tmp");
-		BufferedWriter writer = null;
-		
+		save(json, file, false);
+	}
+
+	/**
+	 * Writes to a temporary file next to the target and atomically moves it over the target,
+	 * so the target always holds either the old or the new content.
+	 * <p>
+	 * The write is skipped when the file already holds exactly the serialized bytes,
+	 * either because this process wrote them last or because the content on disk is identical.
+	 *
+	 * @param sync whether to fsync the file and its directory before returning
+	 */
+	public static void save(JsonElement json, File file, boolean sync) throws IOException
+	{
+		save(json, file, JsonFormat.PRETTY, sync);
+	}
+
+	public static void save(JsonElement json, File file, JsonFormat format, boolean sync) throws IOException
+	{
+		saveIfChanged(json, file.toPath(), format, sync);
+	}
+
+	public static void save(JsonElement json, Path path) throws IOException
+	{
+		saveIfChanged(json, path, JsonFormat.PRETTY, false);
+	}
+
+	public static void save(JsonElement json, Path path, JsonFormat format, boolean sync) throws IOException
+	{
+		saveIfChanged(json, path, format, sync);
+	}
+
+	/**
+	 * Same as {@link #save(JsonElement, File)}.
+	 *
+	 * @return false if the file was left untouched because nothing changed
+	 */
+	public static boolean saveIfChanged(JsonElement json, File file) throws IOException
+	{
+		return saveIfChanged(json, file.toPath(), JsonFormat.PRETTY, false);
+	}
+
+	/**
+	 * Same as {@link #save(JsonElement, Path, JsonFormat, boolean)}.
+	 *
+	 * @return false if the file was left untouched because nothing changed
+	 */
+	public static boolean saveIfChanged(JsonElement json, Path path, JsonFormat format, boolean sync) throws IOException
+	{
+		ByteArrayBuffer buffer = borrowWriteBuffer();
+
+		try
+		{
+			if (format.isText())
+				getGson(format).toJson(json, buffer.writer());
+			else
+				write(json, buffer, format);
+
+			return write(buffer.array(), buffer.size(), path.toAbsolutePath(), sync);
+		}
+		finally
+		{
+			releaseWriteBuffer(buffer);
+		}
+	}
+
+	private static boolean write(byte[] data, int length, Path target, boolean sync) throws IOException
+	{
+		byte[] digest = digest(data, length);
+
+		if (isUnchanged(target, data, length, digest))
+			return false;
+
+		Path temp = target.resolveSibling(target.getFileName() + "." + TEMP_IDS.getAndIncrement() + ".tmp");
+
 		try
 		{
-			writer = new BufferedWriter(new FileWriter(tempFile));
-			save(json, writer);
-			writer.close();
-			writer = null;
+			try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE))
+			{
+				ByteBuffer buffer = ByteBuffer.wrap(data, 0, length);
 
-			file.delete();
-			tempFile.renameTo(file);
+				while (buffer.hasRemaining())
+					channel.write(buffer);
+
+				if (sync)
+					channel.force(true);
+			}
+
+			try
+			{
+				Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+			}
+			catch (AtomicMoveNotSupportedException e)
+			{
+				Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+			}
+
+			if (sync)
+				syncDirectory(target.getParent());
 		}
 		finally
 		{
-			if (writer != null)
-				try
-				{
-					writer.close();
-				}
-				catch (IOException e)
-				{
-					e.printStackTrace();
-				}
+			Files.deleteIfExists(temp);
+		}
+
+		putStamp(target, new FileStamp(target, digest));
+
+		return true;
+	}
+
+	/**
+	 * @return true if the file still holds exactly what this process last saved to it
+	 */
+	public static boolean isLastSaved(File file)
+	{
+		Path path = file.toPath().toAbsolutePath();
+		FileStamp stamp = STAMPS.get(path);
+
+		try
+		{
+			if (stamp == null || !stamp.matches(path))
+				return false;
+
+			if (!stamp.isRacy())
+				return true;
+
+			byte[] bytes = Files.readAllBytes(path);
+
+			if (!Arrays.equals(digest(bytes, bytes.length), stamp.digest))
+				return false;
+
+			putStamp(path, new FileStamp(path, stamp.digest));
+
+			return true;
+		}
+		catch (IOException e)
+		{
+			return false;
+		}
+	}
+
+	private static boolean isUnchanged(Path target, byte[] data, int length, byte[] digest) throws IOException
+	{
+		if (!Files.exists(target))
+			return false;
+
+		FileStamp stamp = STAMPS.get(target);
+
+		if (stamp != null && !stamp.isRacy() && stamp.matches(target))
+			return Arrays.equals(stamp.digest, digest);
+
+		if (Files.size(target) != length || !equals(Files.readAllBytes(target), data, length))
+			return false;
+
+		putStamp(target, new FileStamp(target, digest));
+
+		return true;
+	}
+
+	private static void putStamp(Path path, FileStamp stamp)
+	{
+		if (STAMPS.size() >= MAX_STAMPS)
+			STAMPS.clear();
+
+		STAMPS.put(path, stamp);
+	}
+
+	private static boolean equals(byte[] a, byte[] b, int length)
+	{
+		if (a.length != length)
+			return false;
+
+		for (int i = 0; i < length; i++)
+		{
+			if (a[i] != b[i])
+				return false;
+		}
+
+		return true;
+	}
+
+	private static byte[] digest(byte[] data, int length)
+	{
+		try
+		{
+			MessageDigest digest = MessageDigest.getInstance("SHA-256");
+			digest.update(data, 0, length);
+
+			return digest.digest();
+		}
+		catch (NoSuchAlgorithmException e)
+		{
+			throw new AssertionError(e);
+		}
+	}
+
+	private static void syncDirectory(Path directory)
+	{
+		try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ))
+		{
+			channel.force(true);
+		}
+		catch (IOException e)
+		{
+			// not every platform allows opening a directory, the file itself is already synced
 		}
 	}
 	
@@ -119,5 +646,55 @@ public final class JsonIO
 		getGson().toJson(json, writer);
 	}
 	
+	/*
+	 * Size, modification time and content digest of the last write of a file by this process.
+	 */
+	private static final class FileStamp
+	{
+		final long size;
+
+		final long lastModified;
+
+		final long recorded;
+
+		final byte[] digest;
+
+		FileStamp(Path path, byte[] digest) throws IOException
+		{
+			this.size = Files.size(path);
+			this.lastModified = Files.getLastModifiedTime(path).toMillis();
+			this.recorded = System.currentTimeMillis();
+			this.digest = digest;
+		}
+
+		/*
+		 * True if the file could be changed again without its size or modification time telling.
+		 */
+		boolean isRacy()
+		{
+			return this.recorded - this.lastModified < RACY_MILLIS;
+		}
+
+		boolean matches(Path path) throws IOException
+		{
+			return Files.size(path) == this.size && Files.getLastModifiedTime(path).toMillis() == this.lastModified;
+		}
+	}
+
+	private static final class PathNode
+	{
+		HashMap<String, PathNode> children;
+
+		boolean selected;
+
+		PathNode child(String name)
+		{
+			if (this.children == null)
+				this.children = new HashMap<>();
+
+			return this.children.computeIfAbsent(name, k -> new PathNode());
+		}
+	}
+	
 	private JsonIO() {}
 }
@@ -0,0 +1,312 @@
+/*
+ * Copyright (c) 2019 Noonmaru
+ *
+ * Licensed under the General Public License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://opensource.org/licenses/gpl-2.0.php
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.github.noonmaru.tools.gson;
+
+import com.google.gson.JsonElement;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Byte offsets of the top-level members of a json object file, found without building any value.
+ * <p>
+ * Values are parsed from their byte range only when {@link #parse(int)} is called. The bytes are copied onto the heap,
+ * never left mapped, so the file may be rewritten or truncated while values are still deferred. Only plain json is
+ * indexed, files with comments, unquoted names or other lenient syntax are rejected and should be loaded as a whole.
+ */
+public final class JsonIndex
+{
+	/**
+	 * @return the index, null if the file does not exist, is binary or cannot be indexed
+	 */
+	public static JsonIndex index(File file) throws IOException
+	{
+		if (!file.exists())
+			return null;
+
+		Path path = file.toPath();
+
+		if (!JsonIO.readFormat(path).isText())
+			return null;
+
+		ByteBuffer buffer;
+
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ))
+		{
+			long size = channel.size();
+
+			if (size > Integer.MAX_VALUE)
+				return null;
+
+			// not mapped, a file edited or truncated later must not tear the values still to be parsed
+			buffer = ByteBuffer.allocate((int) size);
+
+			while (buffer.hasRemaining() && channel.read(buffer) != -1)
+			{}
+
+			buffer.flip();
+		}
+
+		JsonIndex index = new JsonIndex(buffer);
+
+		return index.scan() ? index : null;
+	}
+
+	private final ByteBuffer buffer;
+
+	private final ArrayList<String> keys = new ArrayList<>();
+
+	private int[] starts = new int[16];
+
+	private int[] ends = new int[16];
+
+	private JsonIndex(ByteBuffer buffer)
+	{
+		this.buffer = buffer;
+	}
+
+	public int size()
+	{
+		return this.keys.size();
+	}
+
+	public String getKey(int index)
+	{
+		return this.keys.get(index);
+	}
+
+	/**
+	 * Returns true if the value is an object or an array, the values worth deferring.
+	 */
+	public boolean isContainer(int index)
+	{
+		byte b = this.buffer.get(this.starts[index]);
+
+		return b == '{' || b == '[';
+	}
+
+	public JsonElement parse(int index)
+	{
+		ByteBuffer slice = this.buffer.duplicate();
+		slice.limit(this.ends[index]);
+		slice.position(this.starts[index]);
+
+		return JsonIO.load(new ByteBufferReader(slice.slice()));
+	}
+
+	private boolean scan()
+	{
+		ByteBuffer buffer = this.buffer;
+		int limit = buffer.limit();
+		int i = skipWhitespace(buffer, skipBom(buffer), limit);
+
+		if (i >= limit || buffer.get(i) != '{')
+			return false;
+
+		i = skipWhitespace(buffer, i + 1, limit);
+
+		if (i < limit && buffer.get(i) == '}')
+			return true;
+
+		while (i < limit)
+		{
+			if (buffer.get(i) != '"')
+				return false;
+
+			int keyEnd = skipString(buffer, i, limit);
+
+			if (keyEnd < 0)
+				return false;
+
+			String key = decodeKey(buffer, i, keyEnd);
+			i = skipWhitespace(buffer, keyEnd, limit);
+
+			if (i >= limit || buffer.get(i) != ':')
+				return false;
+
+			int start = skipWhitespace(buffer, i + 1, limit);
+			int end = skipValue(buffer, start, limit);
+
+			if (end < 0)
+				return false;
+
+			add(key, start, end);
+			i = skipWhitespace(buffer, end, limit);
+
+			if (i >= limit)
+				return false;
+
+			byte b = buffer.get(i);
+
+			if (b == '}')
+				return true;
+
+			if (b != ',')
+				return false;
+
+			i = skipWhitespace(buffer, i + 1, limit);
+		}
+
+		return false;
+	}
+
+	private void add(String key, int start, int end)
+	{
+		int size = this.keys.size();
+
+		if (size == this.starts.length)
+		{
+			this.starts = Arrays.copyOf(this.starts, size << 1);
+			this.ends = Arrays.copyOf(this.ends, size << 1);
+		}
+
+		this.keys.add(key);
+		this.starts[size] = start;
+		this.ends[size] = end;
+	}
+
+	private static int skipBom(ByteBuffer buffer)
+	{
+		if (buffer.limit() >= 3 && buffer.get(0) == (byte) 0xEF && buffer.get(1) == (byte) 0xBB && buffer.get(2) == (byte) 0xBF)
+			return 3;
+
+		return 0;
+	}
+
+	private static int skipWhitespace(ByteBuffer buffer, int i, int limit)
+	{
+		while (i < limit)
+		{
+			byte b = buffer.get(i);
+
+			if (b != ' ' && b != '\n' && b != '\r' && b != '\t')
+				break;
+
+			i++;
+		}
+
+		return i;
+	}
+
+	/*
+	 * Returns the index after the closing quote, -1 if the string is not terminated.
+	 */
+	private static int skipString(ByteBuffer buffer, int i, int limit)
+	{
+		for (i++; i < limit; i++)
+		{
+			byte b = buffer.get(i);
+
+			if (b == '\\')
+				i++;
+			else if (b == '"')
+				return i + 1;
+		}
+
+		return -1;
+	}
+
+	/*
+	 * Returns the index after the value, -1 on syntax this scanner does not handle.
+	 * Only quotes and brackets matter, multi-byte UTF-8 never contains ASCII bytes.
+	 */
+	private static int skipValue(ByteBuffer buffer, int i, int limit)
+	{
+		if (i >= limit)
+			return -1;
+
+		byte b = buffer.get(i);
+
+		if (b == '"')
+			return skipString(buffer, i, limit);
+
+		if (b == '{' || b == '[')
+		{
+			int depth = 0;
+
+			while (i < limit)
+			{
+				b = buffer.get(i);
+
+				if (b == '"')
+				{
+					i = skipString(buffer, i, limit);
+
+					if (i < 0)
+						return -1;
+
+					continue;
+				}
+
+				if (b == '/' || b == '#')
+					return -1;
+
+				if (b == '{' || b == '[')
+					depth++;
+				else if ((b == '}' || b == ']') && --depth == 0)
+					return i + 1;
+
+				i++;
+			}
+
+			return -1;
+		}
+
+		int start = i;
+
+		while (i < limit)
+		{
+			b = buffer.get(i);
+
+			if (b == ',' || b == '}' || b == ']' || b == ' ' || b == '\n' || b == '\r' || b == '\t')
+				break;
+
+			if (b == '/' || b == '#' || b == '\'')
+				return -1;
+
+			i++;
+		}
+
+		return i > start ? i : -1;
+	}
+
+	private static String decodeKey(ByteBuffer buffer, int start, int end)
+	{
+		byte[] bytes = new byte[end - start];
+		boolean escaped = false;
+
+		for (int i = 0; i < bytes.length; i++)
+		{
+			byte b = bytes[i] = buffer.get(start + i);
+
+			if (b == '\\')
+				escaped = true;
+		}
+
+		if (escaped)
+			return JsonIO.load(new String(bytes, StandardCharsets.UTF_8)).getAsString();
+
+		return new String(bytes, 1, bytes.length - 2, StandardCharsets.UTF_8);
+	}
+}
@@ -0,0 +1,227 @@
+/*
+ * Copyright (c) 2019 Noonmaru
+ *
+ * Licensed under the General Public License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://opensource.org/licenses/gpl-2.0.php
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.github.noonmaru.tools.gson.config;
+
+import com.github.noonmaru.tools.gson.JsonIO;
+import com.google.gson.JsonObject;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Function;
+
+/**
+ * Parses and binds many config files in parallel.
+ * <p>
+ * Write-backs of missing defaults are collected while binding and flushed together
+ * once every file has been bound, so parsing never waits on disk writes.
+ * A file whose write-back fails was still bound, it is reported in both {@link Result#getResults()}
+ * and {@link Result#getErrors()}.
+ */
+public final class BulkConfigLoader
+{
+	public static List<File> listFiles(File directory) throws IOException
+	{
+		File[] files = directory.listFiles((dir, name) -> name.endsWith(".json"));
+
+		if (files == null)
+			throw new IOException("Not a directory: " + directory);
+
+		Arrays.sort(files);
+
+		return Arrays.asList(files);
+	}
+
+	public static Result<JsonConfiguration> loadAll(File directory) throws IOException
+	{
+		return loadAll(listFiles(directory), ForkJoinPool.commonPool());
+	}
+
+	public static Result<JsonConfiguration> loadAll(Collection<File> files, Executor executor)
+	{
+		LinkedHashMap<File, CompletableFuture<JsonConfiguration>> futures = new LinkedHashMap<>();
+
+		for (File file : files)
+			futures.put(file, CompletableFuture.supplyAsync(() -> {
+				try
+				{
+					return JsonConfiguration.load(file);
+				}
+				catch (IOException e)
+				{
+					throw new CompletionException(e);
+				}
+			}, executor));
+
+		return collect(futures, Collections.emptyList(), executor);
+	}
+
+	public static <T> Result<T> bindAll(File directory, Function<? super File, ? extends T> factory) throws IOException
+	{
+		return bindAll(listFiles(directory), factory, ForkJoinPool.commonPool());
+	}
+
+	public static <T> Result<T> bindAll(Collection<File> files, Function<? super File, ? extends T> factory, Executor executor)
+	{
+		LinkedHashMap<File, T> targets = new LinkedHashMap<>();
+
+		for (File file : files)
+			targets.put(file, null);
+
+		return bind(targets, factory, executor);
+	}
+
+	public static <T> Result<T> bindAll(Map<File, T> targets, Executor executor)
+	{
+		return bind(targets, null, executor);
+	}
+
+	private static <T> Result<T> bind(Map<File, T> targets, Function<? super File, ? extends T> factory, Executor executor)
+	{
+		ConcurrentLinkedQueue<PendingWrite> writes = new ConcurrentLinkedQueue<>();
+		LinkedHashMap<File, CompletableFuture<T>> futures = new LinkedHashMap<>();
+
+		for (Map.Entry<File, T> entry : targets.entrySet())
+		{
+			File file = entry.getKey();
+			T target = entry.getValue();
+
+			futures.put(file, CompletableFuture.supplyAsync(() -> {
+				try
+				{
+					JsonObject json = file.exists() ? JsonIO.load(file) : new JsonObject();
+					T o = factory == null ? target : factory.apply(file);
+
+					if (!ConfigUtils.load(o, json))
+						writes.add(new PendingWrite(file, json));
+
+					return o;
+				}
+				catch (IOException e)
+				{
+					throw new CompletionException(e);
+				}
+			}, executor));
+		}
+
+		return collect(futures, writes, executor);
+	}
+
+	private static <T> Result<T> collect(Map<File, CompletableFuture<T>> futures, Collection<PendingWrite> writes, Executor executor)
+	{
+		LinkedHashMap<File, T> results = new LinkedHashMap<>();
+		LinkedHashMap<File, Throwable> errors = new LinkedHashMap<>();
+
+		for (Map.Entry<File, CompletableFuture<T>> entry : futures.entrySet())
+		{
+			try
+			{
+				results.put(entry.getKey(), entry.getValue().join());
+			}
+			catch (CompletionException e)
+			{
+				errors.put(entry.getKey(), e.getCause() == null ? e : e.getCause());
+			}
+		}
+
+		if (!writes.isEmpty())
+		{
+			LinkedHashMap<File, CompletableFuture<Void>> saves = new LinkedHashMap<>();
+
+			for (PendingWrite write : writes)
+				saves.put(write.file, CompletableFuture.runAsync(() -> {
+					try
+					{
+						JsonIO.save(write.json, write.file);
+					}
+					catch (IOException e)
+					{
+						throw new CompletionException(e);
+					}
+				}, executor));
+
+			for (Map.Entry<File, CompletableFuture<Void>> entry : saves.entrySet())
+			{
+				try
+				{
+					entry.getValue().join();
+				}
+				catch (CompletionException e)
+				{
+					errors.put(entry.getKey(), e.getCause() == null ? e : e.getCause());
+				}
+			}
+		}
+
+		return new Result<>(results, errors);
+	}
+
+	private static final class PendingWrite
+	{
+		final File file;
+
+		final JsonObject json;
+
+		PendingWrite(File file, JsonObject json)
+		{
+			this.file = file;
+			this.json = json;
+		}
+	}
+
+	public static final class Result<T>
+	{
+		private final Map<File, T> results;
+
+		private final Map<File, Throwable> errors;
+
+		Result(Map<File, T> results, Map<File, Throwable> errors)
+		{
+			this.results = Collections.unmodifiableMap(results);
+			this.errors = Collections.unmodifiableMap(errors);
+		}
+
+		/**
+		 * Loaded or bound values in the order of the files, including those whose write-back failed.
+		 */
+		public Map<File, T> getResults()
+		{
+			return this.results;
+		}
+
+		/**
+		 * Files that could not be read or bound, and files whose defaults could not be written back.
+		 */
+		public Map<File, Throwable> getErrors()
+		{
+			return this.errors;
+		}
+
+		public boolean hasErrors()
+		{
+			return !this.errors.isEmpty();
+		}
+	}
+
+	private BulkConfigLoader()
+	{}
+}
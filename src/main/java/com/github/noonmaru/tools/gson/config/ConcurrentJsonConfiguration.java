@@ -0,0 +1,138 @@
+/*
+ * Copyright (c) 2019 Noonmaru
+ *
+ * Licensed under the General Public License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://opensource.org/licenses/gpl-2.0.php
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.github.noonmaru.tools.gson.config;
+
+import com.github.noonmaru.tools.gson.JsonIO;
+import com.google.gson.JsonObject;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.function.Consumer;
+
+/**
+ * Read-mostly configuration shared between threads.
+ * <p>
+ * Readers take a {@link #snapshot()}, a read-only {@link JsonConfiguration} that never changes, without locking.
+ * Writers apply a batch of changes to a private copy of the current version and publish it atomically,
+ * so a reader sees either all changes of a batch or none of them. Writers are serialized among themselves.
+ */
+public final class ConcurrentJsonConfiguration
+{
+	public static ConcurrentJsonConfiguration load(File file) throws IOException
+	{
+		return new ConcurrentJsonConfiguration(JsonIO.<JsonObject>load(file));
+	}
+
+	private final Object lock = new Object();
+
+	private volatile JsonConfiguration snapshot;
+
+	private volatile long version;
+
+	public ConcurrentJsonConfiguration()
+	{
+		this(new JsonObject());
+	}
+
+	/**
+	 * The json is copied, later changes to it are not visible through this configuration.
+	 */
+	public ConcurrentJsonConfiguration(JsonObject json)
+	{
+		this.snapshot = publish(new JsonConfiguration(json).copy());
+	}
+
+	private static JsonConfiguration publish(JsonConfiguration config)
+	{
+		return new JsonConfiguration(config.getJson(), true);
+	}
+
+	/**
+	 * Returns the current version. Reads from the returned config are consistent with each other
+	 * regardless of concurrent updates.
+	 */
+	public JsonConfiguration snapshot()
+	{
+		return this.snapshot;
+	}
+
+	/**
+	 * Returns the number of updates published so far.
+	 */
+	public long getVersion()
+	{
+		return this.version;
+	}
+
+	/**
+	 * Applies the batch to a writable copy of the current version and publishes the result.
+	 * If the batch throws, nothing is published.
+	 */
+	public JsonConfiguration update(Consumer<? super JsonConfiguration> batch)
+	{
+		synchronized (this.lock)
+		{
+			JsonConfiguration copy = this.snapshot.copy();
+			batch.accept(copy);
+
+			return replace0(copy);
+		}
+	}
+
+	/**
+	 * Publishes a copy of the json as the new version.
+	 */
+	public JsonConfiguration replace(JsonObject json)
+	{
+		JsonConfiguration copy = new JsonConfiguration(json).copy();
+
+		synchronized (this.lock)
+		{
+			return replace0(copy);
+		}
+	}
+
+	public JsonConfiguration reload(File file) throws IOException
+	{
+		JsonObject json = JsonIO.load(file);
+
+		synchronized (this.lock)
+		{
+			return replace0(new JsonConfiguration(json));
+		}
+	}
+
+	private JsonConfiguration replace0(JsonConfiguration config)
+	{
+		JsonConfiguration snapshot = publish(config);
+		this.snapshot = snapshot;
+		this.version++;
+
+		return snapshot;
+	}
+
+	public void save(File file) throws IOException
+	{
+		this.snapshot.save(file);
+	}
+
+	@Override
+	public String toString()
+	{
+		return this.snapshot.toString();
+	}
+}
@@ -0,0 +1,60 @@
+/*
+ * Copyright (c) 2019 Noonmaru
+ *
+ * Licensed under the General Public License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://opensource.org/licenses/gpl-2.0.php
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.github.noonmaru.tools.gson.config;
+
+import com.google.gson.JsonElement;
+
+/**
+ * One changed value. Paths are relative to the config the listener was added to and separated by '/'.
+ * Old and new values are null when the key did not exist before or was removed.
+ */
+public final class ConfigChange
+{
+	private final String path;
+
+	private final JsonElement oldValue;
+
+	private final JsonElement newValue;
+
+	ConfigChange(String path, JsonElement oldValue, JsonElement newValue)
+	{
+		this.path = path;
+		this.oldValue = oldValue;
+		this.newValue = newValue;
+	}
+
+	public String getPath()
+	{
+		return this.path;
+	}
+
+	public JsonElement getOldValue()
+	{
+		return this.oldValue;
+	}
+
+	public JsonElement getNewValue()
+	{
+		return this.newValue;
+	}
+
+	@Override
+	public String toString()
+	{
+		return this.path + ": " + this.oldValue + " -> " + this.newValue;
+	}
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright (c) 2019 Noonmaru
+ *
+ * Licensed under the General Public License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://opensource.org/licenses/gpl-2.0.php
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.github.noonmaru.tools.gson.config;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * All changes of one {@code set*} call, {@link JsonConfiguration#batch(Runnable)}, reload or bind
+ * that concern a listener. Several changes of the same path are merged into one.
+ */
+public final class ConfigChangeEvent
+{
+	private final Object source;
+
+	private final List<ConfigChange> changes;
+
+	ConfigChangeEvent(Object source, List<ConfigChange> changes)
+	{
+		this.source = source;
+		this.changes = Collections.unmodifiableList(changes);
+	}
+
+	/**
+	 * Returns the {@link JsonConfiguration} or bound object the listener was added to.
+	 */
+	public Object getSource()
+	{
+		return this.source;
+	}
+
+	public List<ConfigChange> getChanges()
+	{
+		return this.changes;
+	}
+
+	/**
+	 * Returns true if the value at the path, a value below it or one of its parents changed.
+	 */
+	public boolean isChanged(String path)
+	{
+		String prefix = ConfigPath.normalize(path);
+
+		for (ConfigChange change : this.changes)
+		{
+			if (ConfigListeners.affects(change.getPath(), prefix))
+				return true;
+		}
+
+		return false;
+	}
+}
@@ -0,0 +1,140 @@
+/*
+ * Copyright (c) 2019 Noonmaru
+ *
+ * Licensed under the General Public License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://opensource.org/licenses/gpl-2.0.php
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.github.noonmaru.tools.gson.config;
+
+import com.google.gson.JsonElement;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/*
+ * Listeners of one config or bound object, each registered for a '/' separated path prefix.
+ * The source of the events is passed in when changes are collected, so the listeners do not keep it reachable.
+ */
+final class ConfigListeners
+{
+	static boolean affects(String path, String prefix)
+	{
+		int length = prefix.length();
+
+		if (length == 0 || path.equals(prefix))
+			return true;
+
+		// a change below the prefix, or a parent of the prefix being replaced
+		if (path.length() > length)
+			return path.charAt(length) == '/' && path.startsWith(prefix);
+
+		return path.length() < length && prefix.charAt(path.length()) == '/' && prefix.startsWith(path);
+	}
+
+	private final CopyOnWriteArrayList<Registration> registrations = new CopyOnWriteArrayList<>();
+
+	void add(String prefix, ConfigChangeListener listener)
+	{
+		this.registrations.add(new Registration(ConfigPath.normalize(prefix), listener));
+	}
+
+	boolean remove(ConfigChangeListener listener)
+	{
+		return this.registrations.removeIf(registration -> registration.listener == listener);
+	}
+
+	boolean isEmpty()
+	{
+		return this.registrations.isEmpty();
+	}
+
+	private static final class Registration
+	{
+		final String prefix;
+
+		final ConfigChangeListener listener;
+
+		Registration(String prefix, ConfigChangeListener listener)
+		{
+			this.prefix = prefix;
+			this.listener = listener;
+		}
+	}
+
+	/*
+	 * Groups changes per listener until they are fired as one event each.
+	 */
+	static final class Collector
+	{
+		private final LinkedHashMap<Registration, Pending> pending = new LinkedHashMap<>();
+
+		void add(ConfigListeners listeners, Object source, String path, JsonElement oldValue, JsonElement newValue)
+		{
+			for (Registration registration : listeners.registrations)
+			{
+				if (!affects(path, registration.prefix))
+					continue;
+
+				Pending pending = this.pending.get(registration);
+
+				if (pending == null)
+					this.pending.put(registration, pending = new Pending(source));
+
+				LinkedHashMap<String, ConfigChange> changes = pending.changes;
+
+				ConfigChange previous = changes.remove(path);
+				JsonElement first = previous == null ? oldValue : previous.getOldValue();
+
+				if (!Objects.equals(first, newValue))
+					changes.put(path, new ConfigChange(path, first, newValue));
+			}
+		}
+
+		void fire()
+		{
+			for (Map.Entry<Registration, Pending> entry : this.pending.entrySet())
+			{
+				Pending pending = entry.getValue();
+
+				if (pending.changes.isEmpty())
+					continue;
+
+				try
+				{
+					entry.getKey().listener.onChange(new ConfigChangeEvent(pending.source, new ArrayList<>(pending.changes.values())));
+				}
+				catch (Exception e)
+				{
+					e.printStackTrace();
+				}
+			}
+
+			this.pending.clear();
+		}
+	}
+
+	private static final class Pending
+	{
+		final Object source;
+
+		final LinkedHashMap<String, ConfigChange> changes = new LinkedHashMap<>();
+
+		Pending(Object source)
+		{
+			this.source = source;
+		}
+	}
+}
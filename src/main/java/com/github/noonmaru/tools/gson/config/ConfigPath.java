@@ -0,0 +1,121 @@
+/*
+ * Copyright (c) 2019 Noonmaru
+ *
+ * Licensed under the General Public License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://opensource.org/licenses/gpl-2.0.php
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.github.noonmaru.tools.gson.config;
+
+import java.util.ArrayList;
+import java.util.concurrent.ConcurrentHashMap;
+
+/*
+ * A '/' or '.' separated path parsed once into interned segments.
+ * '/' paths may use ".." to step up to the parent, '.' paths are plain keys and are only used for lookups.
+ */
+final class ConfigPath
+{
+	static final String PARENT = "..";
+
+	private static final int MAX_CACHE_SIZE = 4096;
+
+	private static final ConcurrentHashMap<String, ConfigPath> CACHE = new ConcurrentHashMap<>();
+
+	static boolean isPath(String name)
+	{
+		return name.indexOf('/') >= 0 || name.indexOf('.') >= 0;
+	}
+
+	/*
+	 * Writes only follow '/' paths, keys such as "192.168.0.1" or "user@example.com" are stored as they are.
+	 */
+	static boolean isWritePath(String name)
+	{
+		return name.indexOf('/') >= 0;
+	}
+
+	static ConfigPath of(String path)
+	{
+		ConfigPath configPath = CACHE.get(path);
+
+		if (configPath == null)
+		{
+			if (CACHE.size() >= MAX_CACHE_SIZE)
+				CACHE.clear();
+
+			configPath = new ConfigPath(path);
+			ConfigPath previous = CACHE.putIfAbsent(path, configPath);
+
+			if (previous != null)
+				configPath = previous;
+		}
+
+		return configPath;
+	}
+
+	/*
+	 * Joins the segments of a path with '/', null and "" stay "".
+	 */
+	static String normalize(String path)
+	{
+		if (path == null || path.isEmpty())
+			return "";
+
+		if (!isPath(path))
+			return path;
+
+		return String.join("/", of(path).segments);
+	}
+
+	final String[] segments;
+
+	final boolean hasParent;
+
+	private ConfigPath(String path)
+	{
+		char separator = path.indexOf('/') >= 0 ? '/' : '.';
+		ArrayList<String> segments = new ArrayList<>();
+		boolean hasParent = false;
+		int start = 0;
+
+		for (int i = 0, length = path.length(); i <= length; i++)
+		{
+			if (i == length || path.charAt(i) == separator)
+			{
+				if (i > start)
+				{
+					String segment = path.substring(start, i);
+
+					segment = segment.intern();
+
+					if (separator == '/' && segment == PARENT)
+						hasParent = true;
+
+					segments.add(segment);
+				}
+
+				start = i + 1;
+			}
+		}
+
+		this.segments = segments.toArray(new String[0]);
+		this.hasParent = hasParent;
+	}
+
+	String last()
+	{
+		String[] segments = this.segments;
+
+		return segments.length == 0 ? null : segments[segments.length - 1];
+	}
+}
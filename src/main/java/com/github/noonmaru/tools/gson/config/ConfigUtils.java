@@ -16,6 +16,7 @@
 
 package com.github.noonmaru.tools.gson.config;
 
+import com.github.noonmaru.tools.asm.FieldAccessor;
 import com.github.noonmaru.tools.gson.JsonIO;
 import com.google.gson.JsonArray;
 import com.google.gson.JsonElement;
@@ -24,19 +25,56 @@ import com.google.gson.JsonPrimitive;
 
 import java.io.File;
 import java.io.IOException;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
 import java.lang.reflect.Field;
 import java.lang.reflect.Modifier;
 import java.lang.reflect.ParameterizedType;
-import java.util.ArrayList;
-import java.util.EnumMap;
-import java.util.IdentityHashMap;
-import java.util.List;
-
+import java.lang.reflect.Type;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Binds {@link Config} fields to json.
+ * <p>
+ * Adapters are immutable and resolved once per field, the registry is concurrent,
+ * so {@code load} may be called from any number of threads at the same time
+ * as long as each thread loads into a different object and json.
+ */
 public final class ConfigUtils
 {
-	private static final IdentityHashMap<Class<?>, ConfigAdapter<?>> ADAPTERS = new IdentityHashMap<>();
-	private static final EnumAdapter ENUM_ADAPTER = new EnumAdapter();
-	private static final ListAdapter LIST_ADAPTER = new ListAdapter();
+	private static final ConcurrentHashMap<Class<?>, ConfigAdapter<?>> ADAPTERS = new ConcurrentHashMap<>();
+	private static final ClassValue<ConfigBinder> INSTANCE_BINDERS = new ClassValue<ConfigBinder>()
+	{
+		@Override
+		protected ConfigBinder computeValue(Class<?> type)
+		{
+			return new ConfigBinder(type, getConfigFields(type, -1));
+		}
+	};
+	private static final ClassValue<ConfigBinder> STATIC_BINDERS = new ClassValue<ConfigBinder>()
+	{
+		@Override
+		protected ConfigBinder computeValue(Class<?> type)
+		{
+			return new ConfigBinder(type, getConfigFields(type, Modifier.STATIC));
+		}
+	};
+	private static final AtomicInteger ADAPTER_VERSION = new AtomicInteger();
+	private static final ListenerRegistry LISTENERS = new ListenerRegistry();
+	private static final ClassValue<ConfigListeners> STATIC_LISTENERS = new ClassValue<ConfigListeners>()
+	{
+		@Override
+		protected ConfigListeners computeValue(Class<?> type)
+		{
+			return new ConfigListeners();
+		}
+	};
+	// set once any listener was added, so that loads skip the registry lookups until then
+	private static volatile boolean staticListened;
+	private static volatile boolean instanceListened;
 
 	static
 	{
@@ -55,6 +93,7 @@ public final class ConfigUtils
 	public static void registerAdapter(Class<?> type, ConfigAdapter<?> adapter)
 	{
 		ADAPTERS.put(type, adapter);
+		ADAPTER_VERSION.incrementAndGet();
 	}
 
 	private static <T> void registerAdapter(Class<T> primitiveType, Class<T> wrapperType, ConfigAdapter<?> adapter)
@@ -63,9 +102,47 @@ public final class ConfigUtils
 		registerAdapter(wrapperType, adapter);
 	}
 
+	/**
+	 * Listens for field values of a bound object, or of the static fields of a class, changed by {@code load}.
+	 * Paths are the config names of the fields. Pass the {@link Class} to listen for static fields.
+	 * Targets are told apart by identity and held weakly, the listener is not.
+	 */
+	public static void addListener(Object target, String prefix, ConfigChangeListener listener)
+	{
+		if (target instanceof Class)
+		{
+			STATIC_LISTENERS.get((Class<?>) target).add(prefix, listener);
+			staticListened = true;
+		}
+		else
+		{
+			LISTENERS.getOrCreate(target).add(prefix, listener);
+			instanceListened = true;
+		}
+	}
+
+	public static boolean removeListener(Object target, ConfigChangeListener listener)
+	{
+		ConfigListeners listeners = target instanceof Class ? STATIC_LISTENERS.get((Class<?>) target) : LISTENERS.get(target);
+
+		return listeners != null && listeners.remove(listener);
+	}
+
+	private static ConfigListeners getListeners(Object target)
+	{
+		ConfigListeners listeners;
+
+		if (target instanceof Class)
+			listeners = staticListened ? STATIC_LISTENERS.get((Class<?>) target) : null;
+		else
+			listeners = instanceListened ? LISTENERS.get(target) : null;
+
+		return listeners == null || listeners.isEmpty() ? null : listeners;
+	}
+
 	public static boolean load(Object o, JsonObject json)
 	{
-		return load(o, getConfigFields(o.getClass(), -1), json);
+		return getBinder(INSTANCE_BINDERS, o.getClass()).load(o, json, o, getListeners(o));
 	}
 
 	public static boolean load(Object o, File file) throws IOException
@@ -81,7 +158,7 @@ public final class ConfigUtils
 
 	public static boolean load(Class<?> clazz, JsonObject json)
 	{
-		return load(null, getConfigFields(clazz, Modifier.STATIC), json);
+		return getBinder(STATIC_BINDERS, clazz).load(null, json, clazz, getListeners(clazz));
 	}
 
 	public static boolean load(Class<?> clazz, File file) throws IOException
@@ -95,71 +172,36 @@ public final class ConfigUtils
 		return false;
 	}
 
-	@SuppressWarnings({"rawtypes", "unchecked"})
-	private static boolean load(Object o, List<Field> fields, JsonObject json)
+	private static ConfigBinder getBinder(ClassValue<ConfigBinder> binders, Class<?> clazz)
 	{
-		boolean result = true;
+		ConfigBinder binder = binders.get(clazz);
 
-		for (Field field : fields)
+		if (binder.adapterVersion != ADAPTER_VERSION.get())
 		{
-			Config c = field.getAnnotation(Config.class);
-
-			String name = c.name();
-
-			if (name.isEmpty())
-				name = field.getName();
-
-			Class<?> fieldType = field.getType();
-
-			ConfigAdapter configAdapter;
+			binders.remove(clazz);
+			binder = binders.get(clazz);
+		}
 
-			if (Enum.class.isAssignableFrom(fieldType))
-			{
-				configAdapter = ENUM_ADAPTER;
-				ENUM_ADAPTER.enumType = (Class<? extends Enum>) fieldType;
-			}
-			else if (List.class == fieldType)
-			{
-				configAdapter = LIST_ADAPTER;
-				
-				LIST_ADAPTER.genericType = (Class<?>) ((ParameterizedType) field.getGenericType()).getActualTypeArguments()[0];
-			}
-			else
-			{
-				configAdapter = getAdapter(fieldType);
+		return binder;
+	}
 
-				if (configAdapter == null)
-					throw new NullPointerException("Unsupported type " + fieldType.getName());
-			}
+	@SuppressWarnings({"rawtypes", "unchecked"})
+	private static ConfigAdapter<?> resolveAdapter(Type type)
+	{
+		Class<?> rawType = (Class<?>) (type instanceof ParameterizedType ? ((ParameterizedType) type).getRawType() : type);
 
-			try
-			{
-				if (json.has(name))
-				{
-					Object value = configAdapter.fromJson(json.get(name));
+		if (Enum.class.isAssignableFrom(rawType))
+			return new EnumAdapter((Class<? extends Enum>) rawType);
 
-					if (value != null)
-					{
-						field.set(o, value);
-						continue;
-					}
-				}
+		if (List.class == rawType)
+			return new ListAdapter(((ParameterizedType) type).getActualTypeArguments()[0]);
 
-				Object value = field.get(o);
+		ConfigAdapter<?> configAdapter = getAdapter(rawType);
 
-				if (value != null && !(field.getAnnotation(Config.class).skippable() && configAdapter.isNullValue(value)))
-				{
-					json.add(name, configAdapter.toJson(value));
-					result = false;
-				}
-			}
-			catch (Exception e)
-			{
-				e.printStackTrace();
-			}
-		}
+		if (configAdapter == null)
+			throw new NullPointerException("Unsupported type " + rawType.getName());
 
-		return result;
+		return configAdapter;
 	}
 
 	private static List<Field> getConfigFields(Class<?> clazz, int modifierFilter)
@@ -186,7 +228,6 @@ public final class ConfigUtils
 					if (list == null)
 						fields.put(priority, list = new ArrayList<>());
 
-					field.setAccessible(true);
 					list.add(field);
 					count++;
 				}
@@ -211,7 +252,11 @@ public final class ConfigUtils
 			if (adapter != null)
 				try
 				{
-					registerAdapter(clazz, configAdapter = adapter.value().asSubclass(ConfigAdapter.class).newInstance());
+					configAdapter = adapter.value().asSubclass(ConfigAdapter.class).newInstance();
+					ConfigAdapter<?> registered = ADAPTERS.putIfAbsent(clazz, configAdapter);
+
+					if (registered != null)
+						configAdapter = registered;
 				}
 				catch (ClassCastException | InstantiationException | IllegalAccessException e)
 				{
@@ -222,10 +267,191 @@ public final class ConfigUtils
 		return configAdapter;
 	}
 
+	/*
+	 * Fields, names and adapters of a class resolved once, in ConfigPriority order.
+	 * Loading is a single pass over the bindings with generated field access.
+	 */
+	private static final class ConfigBinder
+	{
+		final int adapterVersion = ADAPTER_VERSION.get();
+
+		private final FieldAccessor accessor;
+
+		private final Binding[] bindings;
+
+		ConfigBinder(Class<?> clazz, List<Field> fields)
+		{
+			FieldAccessor accessor = this.accessor = FieldAccessor.create(clazz);
+			int size = fields.size();
+			Binding[] bindings = this.bindings = new Binding[size];
+
+			for (int i = 0; i < size; i++)
+			{
+				Field field = fields.get(i);
+				Config c = field.getAnnotation(Config.class);
+				String name = c.name();
+
+				if (name.isEmpty())
+					name = field.getName();
+
+				bindings[i] = new Binding(name, accessor.getIndex(field), resolveAdapter(field.getGenericType()), c.skippable());
+			}
+		}
+
+		@SuppressWarnings({"rawtypes", "unchecked"})
+		boolean load(Object o, JsonObject json, Object source, ConfigListeners listeners)
+		{
+			FieldAccessor accessor = this.accessor;
+			ConfigListeners.Collector collector = listeners == null ? null : new ConfigListeners.Collector();
+			boolean result = true;
+
+			for (Binding binding : this.bindings)
+			{
+				String name = binding.name;
+				ConfigAdapter configAdapter = binding.adapter;
+
+				try
+				{
+					JsonElement element = json.get(name);
+
+					if (element != null)
+					{
+						Object value = configAdapter.fromJson(element);
+
+						if (value != null)
+						{
+							if (collector != null)
+							{
+								// decoded values are compared, a float field or a quoted number differs from the raw json
+								Object oldValue = accessor.get(o, binding.index);
+
+								if (!Objects.deepEquals(oldValue, value))
+									collector.add(listeners, source, name, oldValue == null ? null : configAdapter.toJson(oldValue), configAdapter.toJson(value));
+							}
+
+							accessor.set(o, binding.index, value);
+							continue;
+						}
+					}
+
+					Object value = accessor.get(o, binding.index);
+
+					if (value != null && !(binding.skippable && configAdapter.isNullValue(value)))
+					{
+						json.add(name, configAdapter.toJson(value));
+						result = false;
+					}
+				}
+				catch (Exception e)
+				{
+					e.printStackTrace();
+				}
+			}
+
+			if (collector != null)
+				collector.fire();
+
+			return result;
+		}
+	}
+
+	/*
+	 * Listeners of bound objects, keyed weakly by identity so that equal objects are not mixed up.
+	 */
+	private static final class ListenerRegistry
+	{
+		private final ReferenceQueue<Object> queue = new ReferenceQueue<>();
+
+		private final HashMap<IdentityKey, ConfigListeners> map = new HashMap<>();
+
+		synchronized ConfigListeners get(Object target)
+		{
+			expunge();
+
+			return this.map.isEmpty() ? null : this.map.get(new IdentityKey(target, null));
+		}
+
+		synchronized ConfigListeners getOrCreate(Object target)
+		{
+			expunge();
+
+			IdentityKey key = new IdentityKey(target, this.queue);
+			ConfigListeners listeners = this.map.get(key);
+
+			if (listeners == null)
+				this.map.put(key, listeners = new ConfigListeners());
+
+			return listeners;
+		}
+
+		private void expunge()
+		{
+			Reference<?> reference;
+
+			while ((reference = this.queue.poll()) != null)
+				this.map.remove(reference);
+		}
+	}
+
+	private static final class IdentityKey extends WeakReference<Object>
+	{
+		private final int hash;
+
+		IdentityKey(Object referent, ReferenceQueue<Object> queue)
+		{
+			super(referent, queue);
+			this.hash = System.identityHashCode(referent);
+		}
+
+		@Override
+		public int hashCode()
+		{
+			return this.hash;
+		}
+
+		@Override
+		public boolean equals(Object obj)
+		{
+			if (this == obj)
+				return true;
+
+			if (!(obj instanceof IdentityKey))
+				return false;
+
+			Object referent = get();
+
+			return referent != null && referent == ((IdentityKey) obj).get();
+		}
+	}
+
+	private static final class Binding
+	{
+		final String name;
+
+		final int index;
+
+		final ConfigAdapter<?> adapter;
+
+		final boolean skippable;
+
+		Binding(String name, int index, ConfigAdapter<?> adapter, boolean skippable)
+		{
+			this.name = name;
+			this.index = index;
+			this.adapter = adapter;
+			this.skippable = skippable;
+		}
+	}
+
 	@SuppressWarnings({"unchecked", "rawtypes"})
 	private static class EnumAdapter extends ConfigAdapter<Enum>
 	{
-		Class<? extends Enum> enumType;
+		private final Class<? extends Enum> enumType;
+
+		EnumAdapter(Class<? extends Enum> enumType)
+		{
+			this.enumType = enumType;
+		}
 
 		@Override
 		public Enum fromJson(JsonElement json)
@@ -421,41 +647,22 @@ public final class ConfigUtils
 
 	private static class ListAdapter extends ConfigAdapter<List<?>>
 	{
-		Class<?> genericType;
-
-		ListAdapter()
-		{}
+		private final ConfigAdapter<?> elementAdapter;
 
-		private ListAdapter(Class<?> genericType)
+		ListAdapter(Type elementType)
 		{
-			this.genericType = genericType;
+			this.elementAdapter = resolveAdapter(elementType);
 		}
 
 		@SuppressWarnings({"unchecked", "rawtypes"})
 		@Override
 		public List<?> fromJson(JsonElement json)
 		{
-			Class<?> genericType = this.genericType;
-			ConfigAdapter<?> configAdapter;
+			ConfigAdapter<?> configAdapter = this.elementAdapter;
 			JsonArray array = json.getAsJsonArray();
 			int size = array.size();
 			List list = new ArrayList<>(size);
 
-			if (Enum.class.isAssignableFrom(genericType))
-			{
-				configAdapter = ENUM_ADAPTER;
-				ENUM_ADAPTER.enumType = (Class<? extends Enum>) genericType;
-			}
-			else if (List.class == genericType)
-				configAdapter = new ListAdapter((Class<?>) ((ParameterizedType) genericType.getGenericSuperclass()).getActualTypeArguments()[0]);
-			else
-			{
-				configAdapter = getAdapter(genericType);
-
-				if (configAdapter == null)
-					throw new NullPointerException("Unsupported type " + genericType.getName());
-			}
-
 			for (int i = 0; i < size; i++)
 				list.add(configAdapter.fromJson(array.get(i)));
 
@@ -468,23 +675,7 @@ public final class ConfigUtils
 		{
 			int size = o.size();
 			JsonArray array = new JsonArray();
-			Class<?> genericType = this.genericType;
-			ConfigAdapter configAdapter;
-
-			if (Enum.class.isAssignableFrom(genericType))
-			{
-				configAdapter = ENUM_ADAPTER;
-				ENUM_ADAPTER.enumType = (Class<? extends Enum>) genericType;
-			}
-			else if (List.class == genericType)
-				configAdapter = new ListAdapter((Class<?>) ((ParameterizedType) genericType.getGenericSuperclass()).getActualTypeArguments()[0]);
-			else
-			{
-				configAdapter = getAdapter(genericType);
-
-				if (configAdapter == null)
-					throw new NullPointerException("Unsupported type " + genericType.getName());
-			}
+			ConfigAdapter configAdapter = this.elementAdapter;
 
 			for (int i = 0; i < size; i++)
 				array.add(configAdapter.toJson(o.get(i)));
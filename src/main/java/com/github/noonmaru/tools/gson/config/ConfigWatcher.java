@@ -0,0 +1,293 @@
+/*
+ * Copyright (c) 2019 Noonmaru
+ *
+ * Licensed under the General Public License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://opensource.org/licenses/gpl-2.0.php
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.github.noonmaru.tools.gson.config;
+
+import com.github.noonmaru.tools.gson.JsonIO;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Reloads config files when they change on disk.
+ * <p>
+ * Events are debounced per file, so the temp file and rename of {@link JsonIO#save(com.google.gson.JsonElement, File)}
+ * or an editor's burst of writes cause a single reload. Files that still hold what this process saved last are not reloaded.
+ * <p>
+ * Reloads run on the watcher thread. Bound objects and classes are loaded into there, concurrently with whatever
+ * the application threads are doing with them, so listeners that need a particular thread should hand the work over.
+ */
+public final class ConfigWatcher implements Closeable
+{
+	private final WatchService service;
+
+	private final long debounce;
+
+	private final ConcurrentHashMap<Path, List<Watch>> watched = new ConcurrentHashMap<>();
+
+	private final ConcurrentHashMap<Path, WatchKey> directories = new ConcurrentHashMap<>();
+
+	private final Thread thread;
+
+	private volatile boolean running = true;
+
+	public ConfigWatcher(long debounce, TimeUnit unit) throws IOException
+	{
+		this.service = FileSystems.getDefault().newWatchService();
+		this.debounce = unit.toMillis(debounce);
+		this.thread = new Thread(this::run, "ConfigWatcher");
+		this.thread.setDaemon(true);
+		this.thread.start();
+	}
+
+	public void watch(File file, Consumer<? super JsonConfiguration> listener) throws IOException
+	{
+		register(file, f -> listener.accept(JsonConfiguration.load(f)));
+	}
+
+	public void watch(Object o, File file) throws IOException
+	{
+		register(file, f -> ConfigUtils.load(o, f));
+	}
+
+	public void watch(Class<?> clazz, File file) throws IOException
+	{
+		register(file, f -> ConfigUtils.load(clazz, f));
+	}
+
+	/**
+	 * Stops watching the file, the directory is no longer watched once none of its files is.
+	 */
+	public void unwatch(File file)
+	{
+		Path path = file.toPath().toAbsolutePath();
+		Path directory = path.getParent();
+
+		synchronized (this.directories)
+		{
+			if (this.watched.remove(path) == null)
+				return;
+
+			for (Path watched : this.watched.keySet())
+			{
+				if (directory.equals(watched.getParent()))
+					return;
+			}
+
+			WatchKey key = this.directories.remove(directory);
+
+			if (key != null)
+				key.cancel();
+		}
+	}
+
+	private void register(File file, Reloader reloader) throws IOException
+	{
+		Path path = file.toPath().toAbsolutePath();
+		Path directory = path.getParent();
+
+		synchronized (this.directories)
+		{
+			if (!this.directories.containsKey(directory))
+				this.directories.put(directory, directory.register(this.service, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY));
+
+			this.watched.computeIfAbsent(path, k -> new CopyOnWriteArrayList<>()).add(new Watch(reloader, Stamp.of(path)));
+		}
+	}
+
+	private void run()
+	{
+		HashMap<Path, Long> pending = new HashMap<>();
+
+		while (this.running)
+		{
+			try
+			{
+				WatchKey key;
+
+				if (pending.isEmpty())
+					key = this.service.take();
+				else
+				{
+					long wait = Long.MAX_VALUE;
+
+					for (long deadline : pending.values())
+						wait = Math.min(wait, deadline);
+
+					key = this.service.poll(Math.max(0L, wait - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+				}
+
+				if (key != null)
+				{
+					Path directory = (Path) key.watchable();
+					long deadline = System.currentTimeMillis() + this.debounce;
+
+					for (WatchEvent<?> event : key.pollEvents())
+					{
+						if (event.kind() == StandardWatchEventKinds.OVERFLOW)
+						{
+							for (Path path : this.watched.keySet())
+							{
+								if (directory.equals(path.getParent()))
+									pending.put(path, deadline);
+							}
+						}
+						else
+						{
+							Path path = directory.resolve((Path) event.context());
+
+							if (this.watched.containsKey(path))
+								pending.put(path, deadline);
+						}
+					}
+
+					key.reset();
+				}
+
+				long now = System.currentTimeMillis();
+
+				for (Iterator<Map.Entry<Path, Long>> iterator = pending.entrySet().iterator(); iterator.hasNext(); )
+				{
+					Map.Entry<Path, Long> entry = iterator.next();
+
+					if (entry.getValue() <= now)
+					{
+						iterator.remove();
+						reload(entry.getKey());
+					}
+				}
+			}
+			catch (InterruptedException | ClosedWatchServiceException e)
+			{
+				break;
+			}
+		}
+	}
+
+	private void reload(Path path)
+	{
+		List<Watch> watches = this.watched.get(path);
+
+		if (watches == null || !Files.exists(path))
+			return;
+
+		File file = path.toFile();
+		boolean ownWrite = JsonIO.isLastSaved(file);
+		Stamp stamp = Stamp.of(path);
+
+		for (Watch watch : watches)
+		{
+			if (stamp.isSameAs(watch.stamp))
+				continue;
+
+			watch.stamp = stamp;
+
+			if (ownWrite)
+				continue;
+
+			try
+			{
+				watch.reloader.reload(file);
+			}
+			catch (Exception e)
+			{
+				e.printStackTrace();
+			}
+		}
+	}
+
+
+	@Override
+	public void close() throws IOException
+	{
+		this.running = false;
+		this.service.close();
+		this.thread.interrupt();
+	}
+
+	@FunctionalInterface
+	private interface Reloader
+	{
+		void reload(File file) throws IOException;
+	}
+
+	private static final class Watch
+	{
+		final Reloader reloader;
+
+		volatile Stamp stamp;
+
+		Watch(Reloader reloader, Stamp stamp)
+		{
+			this.reloader = reloader;
+			this.stamp = stamp;
+		}
+	}
+
+	/*
+	 * Size and modification time of a file when it was last loaded.
+	 */
+	private static final class Stamp
+	{
+		// coarsest modification time granularity of common file systems
+		private static final long RACY_MILLIS = 2000L;
+
+		final long size;
+
+		final long lastModified;
+
+		final long recorded;
+
+		private Stamp(long size, long lastModified)
+		{
+			this.size = size;
+			this.lastModified = lastModified;
+			this.recorded = System.currentTimeMillis();
+		}
+
+		static Stamp of(Path path)
+		{
+			try
+			{
+				return new Stamp(Files.size(path), Files.getLastModifiedTime(path).toMillis());
+			}
+			catch (IOException e)
+			{
+				return new Stamp(-1L, -1L);
+			}
+		}
+
+		/*
+		 * A previous stamp taken within the granularity of its modification time proves nothing,
+		 * an edit of the same length right after it keeps both size and time.
+		 */
+		boolean isSameAs(Stamp previous)
+		{
+			return this.size >= 0L && this.size == previous.size && this.lastModified == previous.lastModified
+					&& previous.recorded - previous.lastModified >= RACY_MILLIS;
+		}
+	}
+}
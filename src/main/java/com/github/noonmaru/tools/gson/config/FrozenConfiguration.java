@@ -0,0 +1,595 @@
+/*
+ * Copyright (c) 2019 Noonmaru
+ *
+ * Licensed under the General Public License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://opensource.org/licenses/gpl-2.0.php
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.github.noonmaru.tools.gson.config;
+
+import com.github.noonmaru.tools.gson.JsonIO;
+import com.google.gson.*;
+import com.google.gson.internal.LazilyParsedNumber;
+
+import java.util.*;
+
+/**
+ * Immutable snapshot of a {@link JsonConfiguration}, created by {@link JsonConfiguration#freeze()}.
+ * <p>
+ * Keys live in an open-addressed table, numbers and booleans in a {@code long[]} next to it,
+ * so the primitive getters neither allocate nor touch the Gson tree. Nested objects are frozen too.
+ * Numbers whose text a long or double would not reproduce, such as 1.10, 1e3 or integers beyond long,
+ * also keep their original {@link Number}, so strings, numbers and {@link #toJson()} come out unchanged.
+ * Names resolve like in {@link JsonConfiguration}, as keys first and then as '/' or '.' paths.
+ * Instances are safe to share between threads.
+ */
+public final class FrozenConfiguration
+{
+	private static final byte NULL = 0;
+
+	private static final byte BOOLEAN = 1;
+
+	private static final byte LONG = 2;
+
+	private static final byte DOUBLE = 3;
+
+	private static final byte STRING = 4;
+
+	private static final byte CONFIG = 5;
+
+	private static final byte LIST = 6;
+
+	private final FrozenConfiguration parent;
+
+	private final String[] keys;
+
+	private final byte[] types;
+
+	private final long[] bits;
+
+	private final Object[] refs;
+
+	private final int mask;
+
+	private final List<String> order;
+
+	FrozenConfiguration(JsonObject json, FrozenConfiguration parent)
+	{
+		Set<Map.Entry<String, JsonElement>> entries = json.entrySet();
+		int size = entries.size();
+		int capacity = 4;
+
+		while (capacity * 3 < size * 4)
+			capacity <<= 1;
+
+		this.parent = parent;
+		this.keys = new String[capacity];
+		this.types = new byte[capacity];
+		this.bits = new long[capacity];
+		this.refs = new Object[capacity];
+		this.mask = capacity - 1;
+
+		String[] order = new String[size];
+		int index = 0;
+
+		for (Map.Entry<String, JsonElement> entry : entries)
+		{
+			String key = entry.getKey().intern();
+			int slot = hash(key) & this.mask;
+
+			while (this.keys[slot] != null)
+				slot = (slot + 1) & this.mask;
+
+			this.keys[slot] = key;
+			store(slot, entry.getValue());
+			order[index++] = key;
+		}
+
+		this.order = Collections.unmodifiableList(Arrays.asList(order));
+	}
+
+	private static int hash(String key)
+	{
+		int h = key.hashCode();
+
+		return h ^ (h >>> 16);
+	}
+
+	private void store(int slot, JsonElement value)
+	{
+		if (value.isJsonObject())
+		{
+			this.types[slot] = CONFIG;
+			this.refs[slot] = new FrozenConfiguration(value.getAsJsonObject(), this);
+		}
+		else if (value.isJsonArray())
+		{
+			this.types[slot] = LIST;
+			this.refs[slot] = freezeList(value.getAsJsonArray());
+		}
+		else if (value.isJsonPrimitive())
+		{
+			JsonPrimitive primitive = value.getAsJsonPrimitive();
+
+			if (primitive.isBoolean())
+			{
+				this.types[slot] = BOOLEAN;
+				this.bits[slot] = primitive.getAsBoolean() ? 1L : 0L;
+			}
+			else if (primitive.isNumber())
+			{
+				Number number = primitive.getAsNumber();
+				long longValue = number.longValue();
+
+				if (isIntegral(number, longValue))
+				{
+					this.types[slot] = LONG;
+					this.bits[slot] = longValue;
+				}
+				else
+				{
+					this.types[slot] = DOUBLE;
+					this.bits[slot] = Double.doubleToRawLongBits(number.doubleValue());
+				}
+
+				if (!isExact(number, this.types[slot], this.bits[slot]))
+					this.refs[slot] = number;
+			}
+			else
+			{
+				this.types[slot] = STRING;
+				this.refs[slot] = primitive.getAsString();
+			}
+		}
+		else
+			this.types[slot] = NULL;
+	}
+
+	private static boolean isIntegral(Number number, long longValue)
+	{
+		if (number instanceof Long || number instanceof Integer || number instanceof Short || number instanceof Byte)
+			return true;
+		if (number instanceof Double || number instanceof Float)
+			return false;
+
+		// LazilyParsedNumber and big numbers, keep the text if it is an exact long
+		String s = number.toString();
+
+		try
+		{
+			return Long.parseLong(s) == longValue;
+		}
+		catch (NumberFormatException e)
+		{
+			return false;
+		}
+	}
+
+	private static boolean isExact(Number number, byte type, long bits)
+	{
+		String s = number.toString();
+
+		return s.equals(type == LONG ? Long.toString(bits) : Double.toString(Double.longBitsToDouble(bits)));
+	}
+
+	private List<Object> freezeList(JsonArray array)
+	{
+		int size = array.size();
+		Object[] values = new Object[size];
+
+		for (int i = 0; i < size; i++)
+		{
+			JsonElement element = array.get(i);
+
+			if (element.isJsonObject())
+				values[i] = new FrozenConfiguration(element.getAsJsonObject(), this);
+			else if (element.isJsonArray())
+				values[i] = freezeList(element.getAsJsonArray());
+			else if (element.isJsonPrimitive())
+			{
+				JsonPrimitive primitive = element.getAsJsonPrimitive();
+
+				if (primitive.isBoolean())
+					values[i] = primitive.getAsBoolean();
+				else if (primitive.isNumber())
+					values[i] = primitive.getAsNumber();
+				else
+					values[i] = primitive.getAsString();
+			}
+		}
+
+		return Collections.unmodifiableList(Arrays.asList(values));
+	}
+
+	private int slot(String name)
+	{
+		String[] keys = this.keys;
+		int mask = this.mask;
+		int slot = hash(name) & mask;
+		String key;
+
+		while ((key = keys[slot]) != null)
+		{
+			if (key == name || key.equals(name))
+				return slot;
+
+			slot = (slot + 1) & mask;
+		}
+
+		return -1;
+	}
+
+	/*
+	 * Config holding the last segment of a path, null if the name is not a path or does not resolve.
+	 */
+	private FrozenConfiguration owner(String name)
+	{
+		if (!ConfigPath.isPath(name))
+			return null;
+
+		String[] segments = ConfigPath.of(name).segments;
+		int last = segments.length - 1;
+
+		if (last < 0)
+			return null;
+
+		FrozenConfiguration config = this;
+
+		for (int i = 0; i < last; i++)
+		{
+			String segment = segments[i];
+
+			if (segment == ConfigPath.PARENT)
+			{
+				if (config.parent != null)
+					config = config.parent;
+			}
+			else
+			{
+				int slot = config.slot(segment);
+
+				if (slot < 0 || config.types[slot] != CONFIG)
+					return null;
+
+				config = (FrozenConfiguration) config.refs[slot];
+			}
+		}
+
+		return config;
+	}
+
+	private static String leaf(String name)
+	{
+		return ConfigPath.of(name).last();
+	}
+
+	public FrozenConfiguration getParent()
+	{
+		return this.parent;
+	}
+
+	/**
+	 * Returns the keys of this config in their original order.
+	 */
+	public List<String> getKeys()
+	{
+		return this.order;
+	}
+
+	public int size()
+	{
+		return this.order.size();
+	}
+
+	public boolean has(String name)
+	{
+		if (slot(name) >= 0)
+			return true;
+
+		FrozenConfiguration owner = owner(name);
+
+		return owner != null && owner.slot(leaf(name)) >= 0;
+	}
+
+	public Boolean getBoolean(String name)
+	{
+		int slot = slot(name);
+
+		if (slot < 0)
+		{
+			FrozenConfiguration owner = owner(name);
+
+			return owner == null ? null : owner.booleanValue(owner.slot(leaf(name)));
+		}
+
+		return booleanValue(slot);
+	}
+
+	private Boolean booleanValue(int slot)
+	{
+		if (slot < 0)
+			return null;
+
+		switch (this.types[slot])
+		{
+			case BOOLEAN:
+				return this.bits[slot] != 0L ? Boolean.TRUE : Boolean.FALSE;
+			case STRING:
+				return Boolean.valueOf((String) this.refs[slot]);
+			case LONG:
+			case DOUBLE:
+				return Boolean.FALSE;
+			default:
+				return null;
+		}
+	}
+
+	public byte getByte(String name)
+	{
+		return (byte) getLong(name);
+	}
+
+	public short getShort(String name)
+	{
+		return (short) getLong(name);
+	}
+
+	public int getInt(String name)
+	{
+		return (int) getLong(name);
+	}
+
+	/**
+	 * Returns 0 if the value is missing or neither a number nor a string.
+	 *
+	 * @throws NumberFormatException if the value is a string that is not a number, like {@link JsonConfiguration#getLong(String)}
+	 */
+	public long getLong(String name)
+	{
+		int slot = slot(name);
+
+		if (slot < 0)
+		{
+			FrozenConfiguration owner = owner(name);
+
+			return owner == null ? 0L : owner.longValue(owner.slot(leaf(name)));
+		}
+
+		return longValue(slot);
+	}
+
+	private long longValue(int slot)
+	{
+		if (slot < 0)
+			return 0L;
+
+		switch (this.types[slot])
+		{
+			case LONG:
+				return this.bits[slot];
+			case DOUBLE:
+				// e.g. integers beyond long, converted like the original number does
+				return this.refs[slot] != null ? ((Number) this.refs[slot]).longValue() : (long) Double.longBitsToDouble(this.bits[slot]);
+			case STRING:
+				return new LazilyParsedNumber((String) this.refs[slot]).longValue();
+			default:
+				return 0L;
+		}
+	}
+
+	public float getFloat(String name)
+	{
+		return (float) getDouble(name);
+	}
+
+	/**
+	 * Returns 0 if the value is missing or neither a number nor a string.
+	 *
+	 * @throws NumberFormatException if the value is a string that is not a number, like {@link JsonConfiguration#getDouble(String)}
+	 */
+	public double getDouble(String name)
+	{
+		int slot = slot(name);
+
+		if (slot < 0)
+		{
+			FrozenConfiguration owner = owner(name);
+
+			return owner == null ? 0D : owner.doubleValue(owner.slot(leaf(name)));
+		}
+
+		return doubleValue(slot);
+	}
+
+	private double doubleValue(int slot)
+	{
+		if (slot < 0)
+			return 0D;
+
+		switch (this.types[slot])
+		{
+			case LONG:
+				// e.g. -0
+				return this.refs[slot] != null ? ((Number) this.refs[slot]).doubleValue() : this.bits[slot];
+			case DOUBLE:
+				return Double.longBitsToDouble(this.bits[slot]);
+			case STRING:
+				return new LazilyParsedNumber((String) this.refs[slot]).doubleValue();
+			default:
+				return 0D;
+		}
+	}
+
+	public Number getNumber(String name)
+	{
+		int slot = slot(name);
+		FrozenConfiguration owner = this;
+
+		if (slot < 0 && ((owner = owner(name)) == null || (slot = owner.slot(leaf(name))) < 0))
+			return null;
+
+		switch (owner.types[slot])
+		{
+			case LONG:
+				return owner.refs[slot] != null ? (Number) owner.refs[slot] : (Number) owner.bits[slot];
+			case DOUBLE:
+				return owner.refs[slot] != null ? (Number) owner.refs[slot] : (Number) Double.longBitsToDouble(owner.bits[slot]);
+			case STRING:
+				return new LazilyParsedNumber((String) owner.refs[slot]);
+			default:
+				return null;
+		}
+	}
+
+	public String getString(String name)
+	{
+		int slot = slot(name);
+		FrozenConfiguration owner = this;
+
+		if (slot < 0 && ((owner = owner(name)) == null || (slot = owner.slot(leaf(name))) < 0))
+			return null;
+
+		switch (owner.types[slot])
+		{
+			case STRING:
+				return (String) owner.refs[slot];
+			case BOOLEAN:
+				return owner.bits[slot] != 0L ? "true" : "false";
+			case LONG:
+				return owner.refs[slot] != null ? owner.refs[slot].toString() : Long.toString(owner.bits[slot]);
+			case DOUBLE:
+				return owner.refs[slot] != null ? owner.refs[slot].toString() : Double.toString(Double.longBitsToDouble(owner.bits[slot]));
+			default:
+				return null;
+		}
+	}
+
+	public FrozenConfiguration getConfig(String name)
+	{
+		Object ref = getRef(name, CONFIG);
+
+		return ref == null ? null : (FrozenConfiguration) ref;
+	}
+
+	/**
+	 * Returns an unmodifiable list, nested objects are {@link FrozenConfiguration}s.
+	 */
+	@SuppressWarnings("unchecked")
+	public <T> List<T> getList(String name)
+	{
+		return (List<T>) getRef(name, LIST);
+	}
+
+	public List<String> getStringList(String name)
+	{
+		List<Object> list = getList(name);
+
+		if (list == null)
+			return null;
+
+		int size = list.size();
+		ArrayList<String> strings = new ArrayList<>(size);
+
+		for (int i = 0; i < size; i++)
+		{
+			Object value = list.get(i);
+			strings.add(value == null ? null : value.toString());
+		}
+
+		return strings;
+	}
+
+	private Object getRef(String name, byte type)
+	{
+		int slot = slot(name);
+		FrozenConfiguration owner = this;
+
+		if (slot < 0 && ((owner = owner(name)) == null || (slot = owner.slot(leaf(name))) < 0))
+			return null;
+
+		return owner.types[slot] == type ? owner.refs[slot] : null;
+	}
+
+	/**
+	 * Rebuilds a new json tree from this snapshot.
+	 */
+	public JsonObject toJson()
+	{
+		JsonObject json = new JsonObject();
+
+		for (String key : this.order)
+		{
+			int slot = slot(key);
+			json.add(key, toJson(slot));
+		}
+
+		return json;
+	}
+
+	private JsonElement toJson(int slot)
+	{
+		switch (this.types[slot])
+		{
+			case BOOLEAN:
+				return new JsonPrimitive(this.bits[slot] != 0L);
+			case LONG:
+				return this.refs[slot] != null ? new JsonPrimitive((Number) this.refs[slot]) : new JsonPrimitive(this.bits[slot]);
+			case DOUBLE:
+				return this.refs[slot] != null ? new JsonPrimitive((Number) this.refs[slot]) : new JsonPrimitive(Double.longBitsToDouble(this.bits[slot]));
+			case STRING:
+				return new JsonPrimitive((String) this.refs[slot]);
+			case CONFIG:
+				return ((FrozenConfiguration) this.refs[slot]).toJson();
+			case LIST:
+				return toJson((List<?>) this.refs[slot]);
+			default:
+				return JsonNull.INSTANCE;
+		}
+	}
+
+	private static JsonArray toJson(List<?> list)
+	{
+		JsonArray array = new JsonArray();
+
+		for (Object value : list)
+		{
+			if (value == null)
+				array.add(JsonNull.INSTANCE);
+			else if (value instanceof Boolean)
+				array.add(new JsonPrimitive((Boolean) value));
+			else if (value instanceof Number)
+				array.add(new JsonPrimitive((Number) value));
+			else if (value instanceof String)
+				array.add(new JsonPrimitive((String) value));
+			else if (value instanceof FrozenConfiguration)
+				array.add(((FrozenConfiguration) value).toJson());
+			else
+				array.add(toJson((List<?>) value));
+		}
+
+		return array;
+	}
+
+	/**
+	 * Returns a writable configuration with the same content.
+	 */
+	public JsonConfiguration thaw()
+	{
+		return new JsonConfiguration(toJson());
+	}
+
+	@Override
+	public String toString()
+	{
+		return JsonIO.save(toJson());
+	}
+}
@@ -16,17 +16,21 @@
 
 package com.github.noonmaru.tools.gson.config;
 
+import com.github.noonmaru.tools.gson.AsyncJsonSaver;
+import com.github.noonmaru.tools.gson.JsonFormat;
+import com.github.noonmaru.tools.gson.JsonIndex;
 import com.github.noonmaru.tools.gson.JsonIO;
 import com.google.gson.*;
 
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 public final class JsonConfiguration
 {
 	public static JsonConfiguration load(String s)
 	{
-		return new JsonConfiguration((JsonObject) new JsonParser().parse(new StringReader(s)));
+		return new JsonConfiguration(JsonIO.<JsonObject>load(s));
 	}
 	
 	public static JsonConfiguration load(File file) throws IOException
@@ -39,6 +43,55 @@ public final class JsonConfiguration
 		return new JsonConfiguration(JsonIO.load(reader));
 	}
 
+	/**
+	 * Indexes the top-level keys of the file and parses an object or array value only when it is first read.
+	 * Files the index cannot handle are loaded as a whole. The whole tree is parsed as soon as it is needed
+	 * as json, e.g. by {@link #getJson()}, {@link #save(File)} or {@link #copy()}.
+	 */
+	public static JsonConfiguration loadLazy(File file) throws IOException
+	{
+		JsonIndex index = JsonIndex.index(file);
+
+		if (index == null)
+			return load(file);
+
+		JsonObject json = new JsonObject();
+		HashMap<String, Integer> deferred = new HashMap<>();
+
+		for (int i = 0, size = index.size(); i < size; i++)
+		{
+			String key = index.getKey(i);
+
+			if (index.isContainer(i))
+			{
+				json.add(key, JsonNull.INSTANCE); // keeps the key order until the value is parsed
+				deferred.put(key, i);
+			}
+			else
+			{
+				json.add(key, index.parse(i));
+				deferred.remove(key);
+			}
+		}
+
+		JsonConfiguration config = new JsonConfiguration(json);
+
+		if (!deferred.isEmpty())
+		{
+			config.index = index;
+			config.deferred = deferred;
+		}
+
+		return config;
+	}
+
+	public static JsonConfiguration select(File file, String... paths) throws IOException
+	{
+		JsonObject json = JsonIO.select(file, paths);
+
+		return json == null ? null : new JsonConfiguration(json);
+	}
+
 	@SuppressWarnings("rawtypes")
 	private static JsonElement toJson(Object o)
 	{
@@ -61,55 +114,210 @@ public final class JsonConfiguration
 			return array;
 		}
 		if (o instanceof JsonConfiguration)
-			return ((JsonConfiguration) o).json;
+			return ((JsonConfiguration) o).getJson();
 
 		throw new IllegalArgumentException("Unsupport type " + o.getClass());
 	}
 
+	private static final ThreadLocal<ConfigListeners.Collector> BATCH = new ThreadLocal<>();
+
+	private static final int MAX_MACRO_MEMOS = 4096;
+
+	private static JsonElement deepCopy(JsonElement element)
+	{
+		if (element.isJsonObject())
+		{
+			JsonObject copy = new JsonObject();
+
+			for (Map.Entry<String, JsonElement> entry : element.getAsJsonObject().entrySet())
+				copy.add(entry.getKey(), deepCopy(entry.getValue()));
+
+			return copy;
+		}
+		if (element.isJsonArray())
+		{
+			JsonArray array = element.getAsJsonArray();
+			JsonArray copy = new JsonArray();
+
+			for (int i = 0, size = array.size(); i < size; i++)
+				copy.add(deepCopy(array.get(i)));
+
+			return copy;
+		}
+
+		return element; // primitives and null are immutable
+	}
+
 	private final JsonObject json;
+	private final boolean readOnly;
 	private JsonConfiguration parent;
-	private HashMap<String, JsonConfiguration> children;
+	private String name;
+	private ConfigListeners listeners;
+	private JsonIndex index;
+	private Map<String, Integer> deferred;
+	private Map<MacroTemplate, MacroTemplate.Memo> macros;
+	private Map<String, JsonConfiguration> children;
+	private Map<String, DecodedArray> arrays;
+	private JsonConfiguration view;
+	private int viewModCount;
+	private int modCount;
 
 	public JsonConfiguration()
 	{
-		this.json = new JsonObject();
+		this(new JsonObject());
 	}
 
 	public JsonConfiguration(JsonObject json)
 	{
-		this.json = json;
+		this(json, false);
 	}
 
-	private JsonConfiguration(JsonObject json, JsonConfiguration parent)
+	/*
+	 * Read-only configurations never touch their json and fill the child cache through a ConcurrentHashMap,
+	 * so any number of threads may read them once they are safely published.
+	 */
+	JsonConfiguration(JsonObject json, boolean readOnly)
 	{
 		this.json = json;
+		this.readOnly = readOnly;
+
+		if (readOnly)
+		{
+			this.children = new ConcurrentHashMap<>();
+			this.arrays = new ConcurrentHashMap<>();
+			this.macros = new ConcurrentHashMap<>();
+		}
+	}
+
+	private JsonConfiguration(JsonObject json, JsonConfiguration parent, String name)
+	{
+		this(json, parent.readOnly);
 		this.parent = parent;
+		this.name = name;
 	}
 
-	private void addChild(String name, JsonConfiguration child)
+	private JsonConfiguration addChild(String name, JsonConfiguration child)
 	{
+		if (this.readOnly)
+		{
+			JsonConfiguration previous = this.children.putIfAbsent(name, child);
+
+			return previous == null ? child : previous;
+		}
+
 		if (this.children == null)
 			this.children = new HashMap<>();
 
 		this.children.put(name, child);
+
+		return child;
+	}
+
+	private void checkWritable()
+	{
+		if (this.readOnly)
+			throw new UnsupportedOperationException("Read-only configuration");
+	}
+
+	public boolean isReadOnly()
+	{
+		return this.readOnly;
+	}
+
+	/**
+	 * Returns a deep copy of this config, the copy is always writable and has no parent.
+	 */
+	public JsonConfiguration copy()
+	{
+		return new JsonConfiguration((JsonObject) deepCopy(getJson()));
+	}
+
+	/*
+	 * A read-only config over the same json that other threads may read, as long as nobody writes meanwhile.
+	 * Children are reached through a view of the root so that ".." still resolves.
+	 * The root keeps its view, and the macro memos in it, until the next change made through the config.
+	 */
+	JsonConfiguration readOnlyView()
+	{
+		if (this.readOnly)
+			return this;
+
+		if (this.parent == null)
+		{
+			JsonConfiguration view = this.view;
+
+			if (view == null || this.viewModCount != this.modCount)
+			{
+				this.view = view = new JsonConfiguration(getJson(), true);
+				this.viewModCount = this.modCount;
+			}
+
+			return view;
+		}
+
+		JsonConfiguration view = this.parent.readOnlyView().getConfig(this.name);
+
+		return view == null ? new JsonConfiguration(getJson(), true) : view;
+	}
+
+	/**
+	 * Returns an immutable snapshot of this config for hot read paths.
+	 */
+	public FrozenConfiguration freeze()
+	{
+		return new FrozenConfiguration(getJson(), null);
 	}
 
 	public JsonConfiguration createConfig(String name)
 	{
+		checkWritable();
+
 		JsonObject json = new JsonObject();
-		JsonConfiguration config = new JsonConfiguration(json, this);
+		JsonConfiguration config = new JsonConfiguration(json, this, name);
 
-		this.json.add(name, json);
+		put(name, json);
 		addChild(name, config);
 
 		return config;
 	}
 
+	private void invalidate(String name)
+	{
+		if (this.arrays != null)
+			this.arrays.remove(name);
+
+		for (JsonConfiguration config = this; config != null; config = config.parent)
+			config.modCount++;
+	}
+
+	MacroTemplate.Memo getMacroMemo(MacroTemplate template)
+	{
+		return this.macros == null ? null : this.macros.get(template);
+	}
+
+	void putMacroMemo(MacroTemplate template, MacroTemplate.Memo memo)
+	{
+		if (this.macros == null)
+			this.macros = new HashMap<>();
+		else if (this.macros.size() >= MAX_MACRO_MEMOS)
+			this.macros.clear();
+
+		this.macros.put(template, memo);
+	}
+
+	/*
+	 * Bumped on every change made through this config or one of its descendants.
+	 */
+	int getModCount()
+	{
+		return this.modCount;
+	}
+
 	@SuppressWarnings({"rawtypes", "unchecked"})
 	private Object fromJson(JsonElement element)
 	{
 		if (element.isJsonObject())
-			return new JsonConfiguration(element.getAsJsonObject(), this);
+			return new JsonConfiguration(element.getAsJsonObject(), this, null);
 		else if (element.isJsonArray())
 		{
 			JsonArray array = element.getAsJsonArray();
@@ -147,23 +355,115 @@ public final class JsonConfiguration
 				return (T) config;
 		}
 
-		JsonElement value = this.json.get(name);
+		JsonElement value = value(name);
 
 		if (value == null)
-			return null;
+		{
+			if (!ConfigPath.isPath(name))
+				return null;
+
+			ConfigPath path = ConfigPath.of(name);
+			String last = path.last();
+			JsonConfiguration owner = last == null ? null : resolveOwner(path, false);
+
+			return owner == null ? null : owner.get(last);
+		}
 
 		if (value.isJsonObject())
 		{
 			JsonObject json = value.getAsJsonObject();
-			JsonConfiguration config = new JsonConfiguration(json, this);
-			addChild(name, config);
-
-			return (T) config;
+			return (T) addChild(name, new JsonConfiguration(json, this, name));
 		}
 
+		if (value.isJsonArray())
+			return (T) getList(name);
+
 		return (T) fromJson(value);
 	}
 
+	/*
+	 * Names are looked up as keys first, a name that is not a key but contains '/' or '.' is resolved as a path.
+	 * Setters and remove only follow '/' paths, other names are used as keys.
+	 */
+	JsonElement getElement(String name)
+	{
+		JsonElement value = value(name);
+
+		if (value != null || !ConfigPath.isPath(name))
+			return value;
+
+		return resolveElement(ConfigPath.of(name));
+	}
+
+	private JsonElement resolveElement(ConfigPath path)
+	{
+		String[] segments = path.segments;
+		int last = segments.length - 1;
+
+		if (last < 0)
+			return null;
+
+		if (path.hasParent)
+		{
+			JsonConfiguration owner = resolveOwner(path, false);
+
+			return owner == null ? null : owner.value(segments[last]);
+		}
+
+		if (last == 0)
+			return value(segments[0]);
+
+		JsonObject object = this.json;
+
+		for (int i = 0; i < last; i++)
+		{
+			JsonElement value = i == 0 ? value(segments[0]) : object.get(segments[i]);
+
+			if (value == null || !value.isJsonObject())
+				return null;
+
+			object = value.getAsJsonObject();
+		}
+
+		return object.get(segments[last]);
+	}
+
+	private JsonConfiguration resolveOwner(ConfigPath path, boolean create)
+	{
+		JsonConfiguration config = this;
+		String[] segments = path.segments;
+
+		for (int i = 0, last = segments.length - 1; i < last; i++)
+		{
+			String segment = segments[i];
+
+			if (segment == ConfigPath.PARENT)
+			{
+				if (config.parent != null)
+					config = config.parent;
+			}
+			else
+			{
+				JsonConfiguration sub = config.getChildConfig(segment);
+
+				if (sub == null)
+				{
+					if (!create)
+						return null;
+
+					if (config.json.has(segment))
+						throw new IllegalArgumentException("Not a config: " + segment);
+
+					sub = config.createConfig(segment);
+				}
+
+				config = sub;
+			}
+		}
+
+		return config;
+	}
+
 	public Boolean getBoolean(String name)
 	{
 		JsonPrimitive value = getPrimitive(name);
@@ -193,18 +493,34 @@ public final class JsonConfiguration
 	}
 
 	public JsonConfiguration getConfig(String name)
+	{
+		JsonConfiguration config = getChildConfig(name);
+
+		if (config == null && !this.json.has(name) && ConfigPath.isPath(name))
+		{
+			ConfigPath path = ConfigPath.of(name);
+			String last = path.last();
+			JsonConfiguration owner = last == null ? null : resolveOwner(path, false);
+
+			if (owner != null)
+				config = owner.getChildConfig(last);
+		}
+
+		return config;
+	}
+
+	private JsonConfiguration getChildConfig(String name)
 	{
 		JsonConfiguration config = this.children == null || this.children.isEmpty() ? null : this.children.get(name);
 
 		if (config == null)
 		{
-			JsonElement value = this.json.get(name);
+			JsonElement value = value(name);
 
 			if (value != null && value.isJsonObject())
 			{
 				JsonObject json = value.getAsJsonObject();
-				config = new JsonConfiguration(json, this);
-				addChild(name, config);
+				config = addChild(name, new JsonConfiguration(json, this, name));
 			}
 		}
 
@@ -232,22 +548,152 @@ public final class JsonConfiguration
 		return number == null ? 0 : number.intValue();
 	}
 
-	@SuppressWarnings("unchecked")
-	public <T> List<T> getList(String name)
+	/*
+	 * Decoded views of an array are cached per key until the key is set again or the array is replaced.
+	 */
+	private DecodedArray getDecoded(String name)
 	{
-		JsonElement value = this.json.get(name);
+		JsonElement value = value(name);
 
 		if (value == null)
-			return null;
+		{
+			if (!ConfigPath.isPath(name))
+				return null;
+
+			ConfigPath path = ConfigPath.of(name);
+			String last = path.last();
+			JsonConfiguration owner = last == null ? null : resolveOwner(path, false);
+
+			return owner == null ? null : owner.getDecoded(last);
+		}
 
 		JsonArray array = value.getAsJsonArray();
+
+		if (this.arrays == null)
+			this.arrays = new HashMap<>();
+
+		DecodedArray decoded = this.arrays.get(name);
+
+		if (decoded == null || decoded.source != array)
+		{
+			decoded = new DecodedArray(array);
+			this.arrays.put(name, decoded);
+		}
+
+		return decoded;
+	}
+
+	@SuppressWarnings({"rawtypes", "unchecked"})
+	private List decodeList(JsonArray array)
+	{
 		int size = array.size();
-		ArrayList<T> list = new ArrayList<>(size);
+		Object[] values = new Object[size];
 
 		for (int i = 0; i < size; i++)
-			list.add((T) fromJson(array.get(i)));
+		{
+			JsonElement element = array.get(i);
+			values[i] = element.isJsonArray() ? decodeList(element.getAsJsonArray()) : fromJson(element);
+		}
 
-		return list;
+		return Collections.unmodifiableList(Arrays.asList(values));
+	}
+
+	/**
+	 * Returns an unmodifiable list that is cached until the value is set again.
+	 * Objects in the list are child configs backed by this config.
+	 */
+	@SuppressWarnings("unchecked")
+	public <T> List<T> getList(String name)
+	{
+		DecodedArray decoded = getDecoded(name);
+
+		if (decoded == null)
+			return null;
+
+		List<?> list = decoded.list;
+
+		if (list == null)
+			decoded.list = list = decodeList(decoded.source);
+
+		return (List<T>) list;
+	}
+
+	/**
+	 * Returns a cached array that must not be modified.
+	 */
+	public int[] getIntArray(String name)
+	{
+		DecodedArray decoded = getDecoded(name);
+
+		if (decoded == null)
+			return null;
+
+		int[] values = decoded.ints;
+
+		if (values == null)
+		{
+			JsonArray array = decoded.source;
+			values = new int[array.size()];
+
+			for (int i = 0; i < values.length; i++)
+				values[i] = array.get(i).getAsInt();
+
+			decoded.ints = values;
+		}
+
+		return values;
+	}
+
+	/**
+	 * Returns a cached array that must not be modified.
+	 */
+	public long[] getLongArray(String name)
+	{
+		DecodedArray decoded = getDecoded(name);
+
+		if (decoded == null)
+			return null;
+
+		long[] values = decoded.longs;
+
+		if (values == null)
+		{
+			JsonArray array = decoded.source;
+			values = new long[array.size()];
+
+			for (int i = 0; i < values.length; i++)
+				values[i] = array.get(i).getAsLong();
+
+			decoded.longs = values;
+		}
+
+		return values;
+	}
+
+	/**
+	 * Returns a cached array that must not be modified.
+	 */
+	public double[] getDoubleArray(String name)
+	{
+		DecodedArray decoded = getDecoded(name);
+
+		if (decoded == null)
+			return null;
+
+		double[] values = decoded.doubles;
+
+		if (values == null)
+		{
+			JsonArray array = decoded.source;
+			values = new double[array.size()];
+
+			for (int i = 0; i < values.length; i++)
+				values[i] = array.get(i).getAsDouble();
+
+			decoded.doubles = values;
+		}
+
+		return values;
 	}
 
 	public long getLong(String name)
@@ -271,7 +717,7 @@ public final class JsonConfiguration
 
 	private JsonPrimitive getPrimitive(String name)
 	{
-		JsonElement value = this.json.get(name);
+		JsonElement value = getElement(name);
 
 		return value != null && value.isJsonPrimitive() ? value.getAsJsonPrimitive() : null;
 	}
@@ -290,49 +736,149 @@ public final class JsonConfiguration
 		return value == null ? null : value.getAsString();
 	}
 
+	/**
+	 * Returns an unmodifiable list that is cached until the value is set again.
+	 */
 	public List<String> getStringList(String name)
 	{
-		JsonElement value = this.json.get(name);
+		DecodedArray decoded = getDecoded(name);
 
-		if (value == null)
+		if (decoded == null)
 			return null;
 
-		JsonArray array = value.getAsJsonArray();
-		int size = array.size();
-		ArrayList<String> list = new ArrayList<>(size);
+		List<String> list = decoded.strings;
 
-		for (int i = 0; i < size; i++)
-			list.add(array.get(i).getAsString());
+		if (list == null)
+		{
+			JsonArray array = decoded.source;
+			String[] values = new String[array.size()];
+
+			for (int i = 0; i < values.length; i++)
+				values[i] = array.get(i).getAsString();
+
+			decoded.strings = list = Collections.unmodifiableList(Arrays.asList(values));
+		}
 
 		return list;
 	}
 
-	public boolean has(String name)
+	/*
+	 * Direct key test that leaves deferred values of a lazily loaded config unparsed.
+	 */
+	boolean hasKey(String name)
 	{
 		return this.json.has(name);
 	}
 
+	public boolean has(String name)
+	{
+		return getElement(name) != null;
+	}
+
 	public void save(File file) throws IOException
 	{
-		JsonIO.save(this.json, file);
+		JsonIO.save(getJson(), file);
+	}
+
+	public void save(File file, JsonFormat format) throws IOException
+	{
+		JsonIO.save(getJson(), file, format, false);
+	}
+
+	/**
+	 * @return false if the file was left untouched because it already held this config
+	 */
+	public boolean saveIfChanged(File file) throws IOException
+	{
+		return JsonIO.saveIfChanged(getJson(), file);
+	}
+
+	public void save(File file, AsyncJsonSaver saver)
+	{
+		saver.save(getJson(), file);
 	}
 
 	public void save(Writer writer)
     {
-		JsonIO.save(this.json, writer);
+		JsonIO.save(getJson(), writer);
 	}
 
 	private void set(String name, JsonElement value)
+	{
+		checkWritable();
+
+		if (!this.json.has(name) && ConfigPath.isWritePath(name))
+		{
+			ConfigPath path = ConfigPath.of(name);
+			String last = path.last();
+
+			if (last != null)
+			{
+				resolveOwner(path, true).set(last, value);
+				return;
+			}
+		}
+
+		put(name, value);
+	}
+
+	/*
+	 * Replaces or, for a null value, removes a direct key. Every change of content goes through here.
+	 */
+	private void put(String name, JsonElement value)
 	{
 		if (this.children != null)
 		{
 			JsonConfiguration child = this.children.remove(name);
 
 			if (child != null)
+			{
 				child.parent = null;
+				child.name = null;
+			}
+		}
+
+		if (this.deferred != null && this.deferred.containsKey(name))
+		{
+			if (isListened())
+				materialize(name);
+			else
+				dropDeferred(name);
+		}
+
+		JsonElement oldValue;
+
+		if (value == null)
+			oldValue = this.json.remove(name);
+		else
+		{
+			oldValue = this.json.get(name);
+			this.json.add(name, value);
 		}
 
-		this.json.add(name, value);
+		invalidate(name);
+		changed(name, oldValue, value);
+	}
+
+	public boolean remove(String name)
+	{
+		checkWritable();
+
+		if (!this.json.has(name))
+		{
+			if (!ConfigPath.isWritePath(name))
+				return false;
+
+			ConfigPath path = ConfigPath.of(name);
+			String last = path.last();
+			JsonConfiguration owner = last == null ? null : resolveOwner(path, false);
+
+			return owner != null && owner.remove(last);
+		}
+
+		put(name, null);
+
+		return true;
 	}
 
 	@SuppressWarnings("rawtypes")
@@ -364,22 +910,32 @@ public final class JsonConfiguration
 
 	public void setConfig(String name, JsonConfiguration config)
 	{
-		JsonConfiguration configParent = config.parent;
+		checkWritable();
 
-		if (configParent != null)
-			throw new IllegalArgumentException("Config already has parent");
+		if (!this.json.has(name) && ConfigPath.isWritePath(name))
+		{
+			ConfigPath path = ConfigPath.of(name);
+			String last = path.last();
 
-		JsonConfiguration parent = this.parent;
+			if (last != null)
+			{
+				resolveOwner(path, true).setConfig(last, config);
+				return;
+			}
+		}
+
+		if (config.parent != null)
+			throw new IllegalArgumentException("Config already has parent");
 
-		while (parent != null)
+		for (JsonConfiguration parent = this; parent != null; parent = parent.parent)
 		{
-			if (parent == configParent)
+			if (parent == config)
 				throw new IllegalArgumentException("Config cannot be ancestor");
-
-			parent = parent.parent;
 		}
 
-		this.json.add(name, config.json);
+		put(name, config.getJson());
+		config.parent = this;
+		config.name = name;
 		addChild(name, config);
 	}
 
@@ -393,6 +949,36 @@ public final class JsonConfiguration
 		set(name, array);
 	}
 
+	public void setIntArray(String name, int... values)
+	{
+		JsonArray array = new JsonArray();
+
+		for (int value : values)
+			array.add(new JsonPrimitive(value));
+
+		set(name, array);
+	}
+
+	public void setLongArray(String name, long... values)
+	{
+		JsonArray array = new JsonArray();
+
+		for (long value : values)
+			array.add(new JsonPrimitive(value));
+
+		set(name, array);
+	}
+
+	public void setDoubleArray(String name, double... values)
+	{
+		JsonArray array = new JsonArray();
+
+		for (double value : values)
+			array.add(new JsonPrimitive(value));
+
+		set(name, array);
+	}
+
 	public void setNumber(String name, Number value)
 	{
 		set(name, new JsonPrimitive(value));
@@ -423,16 +1009,176 @@ public final class JsonConfiguration
 		set(name, array);
 	}
 
+	/**
+	 * Listens for changes at, below or above the key or path prefix, an empty prefix receives every change.
+	 * Paths in the events are relative to this config and separated by '/'.
+	 * Only changes made through {@link JsonConfiguration} methods are seen, not edits of {@link #getJson()}.
+	 */
+	public void addListener(String prefix, ConfigChangeListener listener)
+	{
+		if (this.listeners == null)
+			this.listeners = new ConfigListeners();
+
+		this.listeners.add(prefix, listener);
+	}
+
+	public boolean removeListener(ConfigChangeListener listener)
+	{
+		return this.listeners != null && this.listeners.remove(listener);
+	}
+
+	/**
+	 * Runs the changes and delivers them to listeners as one event per listener once the outermost batch ends.
+	 */
+	public void batch(Runnable changes)
+	{
+		ConfigListeners.Collector batch = BATCH.get();
+
+		if (batch != null)
+		{
+			changes.run();
+			return;
+		}
+
+		batch = new ConfigListeners.Collector();
+		BATCH.set(batch);
+
+		try
+		{
+			changes.run();
+		}
+		finally
+		{
+			BATCH.remove();
+			batch.fire();
+		}
+	}
+
+	/**
+	 * Replaces the content with the json in place, keeping child configs and their listeners.
+	 * Only values that differ are set and all changes are delivered as one batch.
+	 */
+	public void reload(JsonObject json)
+	{
+		checkWritable();
+		batch(() -> merge(json));
+	}
+
+	public void reload(File file) throws IOException
+	{
+		reload(JsonIO.<JsonObject>load(file));
+	}
+
+	private void merge(JsonObject json)
+	{
+		ArrayList<String> removed = new ArrayList<>();
+
+		for (Map.Entry<String, JsonElement> entry : this.json.entrySet())
+		{
+			if (!json.has(entry.getKey()))
+				removed.add(entry.getKey());
+		}
+
+		for (String key : removed)
+			put(key, null);
+
+		for (Map.Entry<String, JsonElement> entry : json.entrySet())
+		{
+			String key = entry.getKey();
+			JsonElement value = entry.getValue();
+			JsonElement current = value(key);
+
+			if (current != null && current.isJsonObject() && value.isJsonObject())
+				getChildConfig(key).merge(value.getAsJsonObject());
+			else if (!value.equals(current))
+				put(key, value);
+		}
+	}
+
+	private boolean isListened()
+	{
+		for (JsonConfiguration config = this; config != null; config = config.name == null ? null : config.parent)
+		{
+			if (config.listeners != null && !config.listeners.isEmpty())
+				return true;
+		}
+
+		return false;
+	}
+
+	private void changed(String name, JsonElement oldValue, JsonElement newValue)
+	{
+		if (!isListened())
+			return;
+
+		ConfigListeners.Collector batch = BATCH.get();
+		ConfigListeners.Collector collector = batch == null ? new ConfigListeners.Collector() : batch;
+		String path = name;
+
+		for (JsonConfiguration config = this; ; config = config.parent)
+		{
+			if (config.listeners != null)
+				collector.add(config.listeners, config, path, oldValue, newValue);
+
+			if (config.parent == null || config.name == null)
+				break;
+
+			path = config.name + '/' + path;
+		}
+
+		if (batch == null)
+			collector.fire();
+	}
+
 	public JsonObject getJson()
 	{
+		if (this.deferred != null)
+		{
+			for (String name : new ArrayList<>(this.deferred.keySet()))
+				materialize(name);
+		}
+
 		return this.json;
 	}
 
+	/*
+	 * Direct key lookup that parses a deferred value of a lazily loaded config first.
+	 */
+	private JsonElement value(String name)
+	{
+		if (this.deferred != null)
+			materialize(name);
+
+		return this.json.get(name);
+	}
+
+	private void materialize(String name)
+	{
+		Integer index = this.deferred.get(name);
+
+		if (index != null)
+		{
+			this.json.add(name, this.index.parse(index));
+			dropDeferred(name);
+		}
+	}
+
+	private void dropDeferred(String name)
+	{
+		this.deferred.remove(name);
+
+		if (this.deferred.isEmpty())
+		{
+			this.deferred = null;
+			this.index = null;
+		}
+	}
+
 	public Map<String, Object> toRaw()
 	{
 		LinkedHashMap<String, Object> map = new LinkedHashMap<>();
 
-		for (Map.Entry<String, JsonElement> entry : this.json.entrySet())
+		for (Map.Entry<String, JsonElement> entry : getJson().entrySet())
 			map.put(entry.getKey(), fromJson(entry.getValue()));
 
 		return map;
@@ -441,6 +1187,23 @@ public final class JsonConfiguration
 	@Override
 	public String toString()
 	{
-		return JsonIO.save(this.json);
+		return JsonIO.save(getJson());
+	}
+
+	private static final class DecodedArray
+	{
+		final JsonArray source;
+
+		// filled on first use, racing readers of a read-only config at worst decode twice
+		volatile List<?> list;
+		volatile List<String> strings;
+		volatile int[] ints;
+		volatile long[] longs;
+		volatile double[] doubles;
+
+		DecodedArray(JsonArray source)
+		{
+			this.source = source;
+		}
 	}
 }
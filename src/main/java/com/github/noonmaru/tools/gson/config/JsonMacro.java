@@ -16,189 +16,89 @@
 
 package com.github.noonmaru.tools.gson.config;
 
-import javax.script.ScriptEngine;
-import javax.script.ScriptEngineManager;
-import javax.script.ScriptException;
-import java.text.DecimalFormat;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 
 public final class JsonMacro
 {
-    private static final ScriptEngine JAVA_SCRIPT_ENGINE = new ScriptEngineManager().getEngineByName("JavaScript");
+    private static final int MAX_CACHED_EXPRESSIONS = 8192;
 
-    public static Object eval(String script)
-    {
-        try
-        {
-            return JAVA_SCRIPT_ENGINE.eval(script);
-        }
-        catch (ScriptException e)
-        {
-            e.printStackTrace();
-        }
+    private static final ConcurrentHashMap<String, Object> EXPRESSIONS = new ConcurrentHashMap<>();
 
-        return null;
-    }
+    private static final Object INVALID = new Object();
 
-    private static DecimalFormat formatter;
-
-    private static DecimalFormat formatter()
-    {
-        if (formatter == null)
-            formatter = new DecimalFormat("#.##");
-
-        return formatter;
-    }
-
-    public static String process(String s, JsonConfiguration config)
+    /**
+     * Evaluates an arithmetic or boolean expression with JavaScript number semantics, see {@code EVAL(...)}.
+     * Results are cached per script.
+     *
+     * @return a Boolean, an Integer or Long for integral results, a Double otherwise, or null if the script is invalid
+     */
+    public static Object eval(String script)
     {
-        StringBuilder builder = new StringBuilder(s);
-
-        int index = 0;
-        int length = 0;
+        Object result = EXPRESSIONS.get(script);
 
-        while (index < (length = builder.length()))
+        if (result == null)
         {
-            if ('[' == builder.charAt(index++))
+            try
             {
-                int macroStart = index - 1;
-
-                find:
-                while (index < length)
-                {
-                    char c = builder.charAt(index++);
-
-                    if (']' == c)
-                    {
-                        String macro = builder.substring(macroStart + 1, index - 1);
-
-                        if (macro.isEmpty())
-                            continue;
-
-                        int lastIndex = macro.lastIndexOf('/');
-                        JsonConfiguration current = config;
-                        String name;
-
-                        if (lastIndex >= 0)
-                        {
-                            name = macro.substring(lastIndex + 1);
-
-                            if (name.isEmpty())
-                                continue;
-
-                            String[] pathes = macro.substring(0, lastIndex).split("/");
-
-                            for (String path : pathes)
-                            {
-                                if (path.isEmpty())
-                                    continue;
-
-                                if ("..".equals(path))
-                                {
-                                    JsonConfiguration parent = current.getParent();
-
-                                    if (parent != null)
-                                        current = parent;
-                                }
-                                else
-                                {
-                                    JsonConfiguration sub = current.getConfig(path);
-
-                                    if (sub == null)
-                                        continue find;
-
-                                    current = sub;
-                                }
-                            }
-                        }
-                        else
-                        {
-                            name = macro;
-                        }
-
-                        Object value = current.get(name);
-
-                        if (value != null)
-                        {
-                            String replace = value.toString();
-                            builder.replace(macroStart, index, replace);
-                            index = macroStart + replace.length();
-                        }
-
-                        break;
-                    }
-                }
+                result = MacroExpression.parse(script, false).evaluate();
             }
-        }
-
-        index = 0;
-        find:
-        while ((index = builder.indexOf("EVAL(", index)) > -1)
-        {
-            length = builder.length();
-            int depth = 0;
-
-            for (int i = index + 6; i < length; i++)
+            catch (IllegalArgumentException e)
             {
-                char c = builder.charAt(i);
-
-                if (c == '(')
-                    depth++;
-                else if (c == ')')
-                {
-                    if (depth-- == 0)
-                    {
-                        String script = builder.substring(index + 5, i);
-                        String result = String.valueOf(eval(script));
-
-                        builder.replace(index, i + 1, result);
-                        index += result.length();
-                        continue find;
-                    }
-                }
+                e.printStackTrace(); // once per script, later calls return null silently
+                result = INVALID;
             }
 
-            break;
+            if (EXPRESSIONS.size() >= MAX_CACHED_EXPRESSIONS)
+                EXPRESSIONS.clear();
+
+            EXPRESSIONS.put(script, result);
         }
 
-        index = 0;
-        find:
-        while ((index = builder.indexOf("FORMAT(", index)) > -1)
+        return result == INVALID ? null : result;
+    }
+
+    private static final int MAX_CACHED_TEMPLATES = 8192;
+
+    private static final ConcurrentHashMap<String, MacroTemplate> TEMPLATES = new ConcurrentHashMap<>();
+
+    /**
+     * Returns the parsed template of the string, templates are cached.
+     */
+    public static MacroTemplate compile(String s)
+    {
+        MacroTemplate template = TEMPLATES.get(s);
+
+        if (template == null)
         {
-            length = builder.length();
-            int depth = 0;
+            if (TEMPLATES.size() >= MAX_CACHED_TEMPLATES)
+                TEMPLATES.clear();
 
-            for (int i = index + 8; i < length; i++)
-            {
-                char c = builder.charAt(i);
-
-                if (c == '(')
-                    depth++;
-                else if (c == ')')
-                {
-                    if (depth-- == 0)
-                    {
-                        String value = builder.substring(index + 7, i);
-                        String[] split = value.split(",");
-
-                        DecimalFormat format = split.length == 2 ? new DecimalFormat(split[1].trim()) : formatter();
-
-                        value = format.format(Double.parseDouble(split[0]));
-
-                        builder.replace(index, i + 1, value);
-                        index += value.length();
-                        continue find;
-                    }
-                }
-            }
+            template = MacroTemplate.compile(s);
+            MacroTemplate previous = TEMPLATES.putIfAbsent(s, template);
 
-            break;
+            if (previous != null)
+                template = previous;
         }
 
-        return builder.toString();
+        return template;
+    }
+
+    /**
+     * Renders the string against the config. The result is remembered per config and reused while the values
+     * it read are unchanged, however they were changed, see {@link MacroTemplate}.
+     *
+     * @throws IllegalArgumentException if references expand into each other in a cycle
+     */
+    public static String process(String s, JsonConfiguration config)
+    {
+        return compile(s).render(config);
     }
 
     public static List<String> processAll(Collection<String> src, JsonConfiguration config)
@@ -211,6 +111,52 @@ public final class JsonMacro
         return list;
     }
 
+    /**
+     * Renders the strings on the common fork-join pool, results keep the order of the collection.
+     * <p>
+     * The config is read through a read-only view, so it must not be modified until this returns.
+     */
+    public static List<String> processAllParallel(Collection<String> src, JsonConfiguration config)
+    {
+        JsonConfiguration view = config.readOnlyView();
+
+        return src.parallelStream().map(s -> compile(s).render(view)).collect(Collectors.toList());
+    }
+
+    /**
+     * Returns a lazy stream that renders each string when it is consumed.
+     * <p>
+     * Strings are rendered against the config as it is at that moment. Unless the config is read-only,
+     * the stream must be consumed sequentially on the thread that owns the config.
+     */
+    public static Stream<String> processStream(Collection<String> src, JsonConfiguration config)
+    {
+        return src.stream().map(s -> process(s, config));
+    }
+
+    /**
+     * Returns a lazy iterator over the rendered strings, see {@link #processStream(Collection, JsonConfiguration)}.
+     */
+    public static Iterator<String> processIterator(Iterable<String> src, JsonConfiguration config)
+    {
+        Iterator<String> iterator = src.iterator();
+
+        return new Iterator<String>()
+        {
+            @Override
+            public boolean hasNext()
+            {
+                return iterator.hasNext();
+            }
+
+            @Override
+            public String next()
+            {
+                return process(iterator.next(), config);
+            }
+        };
+    }
+
     private JsonMacro()
     {}
 }
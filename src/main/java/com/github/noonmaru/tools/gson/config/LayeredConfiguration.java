@@ -0,0 +1,476 @@
+/*
+ * Copyright (c) 2019 Noonmaru
+ *
+ * Licensed under the General Public License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://opensource.org/licenses/gpl-2.0.php
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.github.noonmaru.tools.gson.config;
+
+import com.github.noonmaru.tools.gson.JsonIO;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Stacks configs on top of each other without copying them, e.g. overrides over shipped defaults.
+ * <p>
+ * Layers are given top first. A value is read from the topmost layer that has it, objects present in several
+ * layers are merged the same way through {@link #getConfig(String)}. Writes go to the top layer only, so
+ * {@link #save(File)} writes just the overrides. Which layer holds a key is cached per name and the cache is
+ * dropped whenever any layer is modified through its {@link JsonConfiguration}.
+ */
+public final class LayeredConfiguration
+{
+	public static LayeredConfiguration load(File... files) throws IOException
+	{
+		JsonConfiguration[] layers = new JsonConfiguration[files.length];
+
+		for (int i = 0; i < files.length; i++)
+			layers[i] = files[i].exists() ? JsonConfiguration.load(files[i]) : new JsonConfiguration();
+
+		return new LayeredConfiguration(layers);
+	}
+
+	private static final JsonConfiguration NONE = new JsonConfiguration(new JsonObject(), true);
+
+	private final LayeredConfiguration root;
+
+	private final LayeredConfiguration parent;
+
+	private final String name;
+
+	// top first, null where a layer does not have this config
+	private JsonConfiguration[] layers;
+
+	private final int[] stamps;
+
+	private int generation;
+
+	private final HashMap<String, JsonConfiguration> owners = new HashMap<>();
+
+	private final HashMap<String, LayeredConfiguration> children = new HashMap<>();
+
+	public LayeredConfiguration(JsonConfiguration... layers)
+	{
+		if (layers.length == 0)
+			throw new IllegalArgumentException("No layers");
+
+		this.root = this;
+		this.parent = null;
+		this.name = null;
+		this.layers = layers.clone();
+		this.stamps = new int[layers.length];
+
+		for (int i = 0; i < layers.length; i++)
+			this.stamps[i] = layers[i].getModCount();
+	}
+
+	private LayeredConfiguration(LayeredConfiguration parent, String name, JsonConfiguration[] layers)
+	{
+		this.root = parent.root;
+		this.parent = parent;
+		this.name = name;
+		this.layers = layers;
+		this.stamps = null;
+		this.generation = this.root.generation;
+	}
+
+	/*
+	 * Changes to any config of a layer bump the modCount of its root, so the root stamps cover the whole tree.
+	 */
+	private void validate()
+	{
+		LayeredConfiguration root = this.root;
+
+		if (root == this)
+		{
+			JsonConfiguration[] layers = this.layers;
+			int[] stamps = this.stamps;
+			boolean changed = false;
+
+			for (int i = 0; i < layers.length; i++)
+			{
+				int modCount = layers[i].getModCount();
+
+				if (stamps[i] != modCount)
+				{
+					stamps[i] = modCount;
+					changed = true;
+				}
+			}
+
+			if (changed)
+			{
+				this.owners.clear();
+				this.generation++;
+			}
+		}
+		else
+		{
+			root.validate();
+
+			if (this.generation != root.generation)
+			{
+				this.layers = this.parent.getChildLayers(this.name);
+				this.owners.clear();
+				this.generation = root.generation;
+			}
+		}
+	}
+
+	private JsonConfiguration[] getChildLayers(String name)
+	{
+		validate();
+
+		JsonConfiguration[] layers = this.layers;
+		JsonConfiguration[] childLayers = new JsonConfiguration[layers.length];
+
+		for (int i = 0; i < layers.length; i++)
+		{
+			JsonConfiguration layer = layers[i];
+
+			if (layer != null)
+				childLayers[i] = layer.getConfig(name);
+		}
+
+		return childLayers;
+	}
+
+	private static boolean isEmpty(JsonConfiguration[] layers)
+	{
+		for (JsonConfiguration layer : layers)
+		{
+			if (layer != null)
+				return false;
+		}
+
+		return true;
+	}
+
+	/*
+	 * Topmost layer that has the name, NONE if no layer has it.
+	 */
+	private JsonConfiguration getOwner(String name)
+	{
+		validate();
+
+		JsonConfiguration owner = this.owners.get(name);
+
+		if (owner == null)
+		{
+			owner = NONE;
+
+			for (JsonConfiguration layer : this.layers)
+			{
+				if (layer != null && layer.getElement(name) != null)
+				{
+					owner = layer;
+					break;
+				}
+			}
+
+			this.owners.put(name, owner);
+		}
+
+		return owner;
+	}
+
+	private JsonConfiguration getTop()
+	{
+		validate();
+
+		JsonConfiguration top = this.layers[0];
+
+		if (top == null)
+		{
+			JsonConfiguration parentTop = this.parent.getTop();
+			top = parentTop.getConfig(this.name);
+
+			if (top == null)
+				top = parentTop.createConfig(this.name);
+		}
+
+		return top;
+	}
+
+	public LayeredConfiguration getParent()
+	{
+		return this.parent;
+	}
+
+	/**
+	 * Returns the layers of this config, top first. Entries are null where a layer does not have this config.
+	 */
+	public JsonConfiguration[] getLayers()
+	{
+		validate();
+
+		return this.layers.clone();
+	}
+
+	public boolean has(String name)
+	{
+		return getOwner(name) != NONE;
+	}
+
+	/**
+	 * Objects are returned as {@link LayeredConfiguration}s, everything else as in {@link JsonConfiguration#get(String)}.
+	 */
+	public <T> T get(String name)
+	{
+		JsonConfiguration owner = getOwner(name);
+
+		if (owner != NONE && owner.getElement(name).isJsonObject())
+		{
+			@SuppressWarnings("unchecked")
+			T config = (T) getConfig(name);
+
+			return config;
+		}
+
+		return owner.get(name);
+	}
+
+	public LayeredConfiguration getConfig(String name)
+	{
+		validate();
+
+		LayeredConfiguration child = this.children.get(name);
+
+		if (child == null)
+		{
+			if (ConfigPath.isPath(name) && !hasKey(name))
+				return getConfig(ConfigPath.of(name));
+
+			JsonConfiguration[] layers = getChildLayers(name);
+
+			if (isEmpty(layers))
+				return null;
+
+			child = new LayeredConfiguration(this, name, layers);
+			this.children.put(name, child);
+
+			return child;
+		}
+
+		child.validate();
+
+		return isEmpty(child.layers) ? null : child;
+	}
+
+	private boolean hasKey(String name)
+	{
+		for (JsonConfiguration layer : this.layers)
+		{
+			if (layer != null && layer.hasKey(name))
+				return true;
+		}
+
+		return false;
+	}
+
+	private LayeredConfiguration getConfig(ConfigPath path)
+	{
+		LayeredConfiguration config = this;
+
+		for (String segment : path.segments)
+		{
+			if (segment == ConfigPath.PARENT)
+			{
+				if (config.parent != null)
+					config = config.parent;
+			}
+			else if ((config = config.getConfig(segment)) == null)
+				return null;
+		}
+
+		return config == this ? null : config;
+	}
+
+	public Boolean getBoolean(String name)
+	{
+		return getOwner(name).getBoolean(name);
+	}
+
+	public byte getByte(String name)
+	{
+		return getOwner(name).getByte(name);
+	}
+
+	public char getChar(String name)
+	{
+		return getOwner(name).getChar(name);
+	}
+
+	public Character getCharacter(String name)
+	{
+		return getOwner(name).getCharacter(name);
+	}
+
+	public double getDouble(String name)
+	{
+		return getOwner(name).getDouble(name);
+	}
+
+	public float getFloat(String name)
+	{
+		return getOwner(name).getFloat(name);
+	}
+
+	public int getInt(String name)
+	{
+		return getOwner(name).getInt(name);
+	}
+
+	public long getLong(String name)
+	{
+		return getOwner(name).getLong(name);
+	}
+
+	public Number getNumber(String name)
+	{
+		return getOwner(name).getNumber(name);
+	}
+
+	public short getShort(String name)
+	{
+		return getOwner(name).getShort(name);
+	}
+
+	public String getString(String name)
+	{
+		return getOwner(name).getString(name);
+	}
+
+	public <T> List<T> getList(String name)
+	{
+		return getOwner(name).getList(name);
+	}
+
+	public List<String> getStringList(String name)
+	{
+		return getOwner(name).getStringList(name);
+	}
+
+	public int[] getIntArray(String name)
+	{
+		return getOwner(name).getIntArray(name);
+	}
+
+	public long[] getLongArray(String name)
+	{
+		return getOwner(name).getLongArray(name);
+	}
+
+	public double[] getDoubleArray(String name)
+	{
+		return getOwner(name).getDoubleArray(name);
+	}
+
+	/**
+	 * Sets the value in the top layer, creating the config there if only lower layers have it.
+	 */
+	public void set(String name, Object value)
+	{
+		getTop().set(name, value);
+	}
+
+	public void setBoolean(String name, Boolean value)
+	{
+		getTop().setBoolean(name, value);
+	}
+
+	public void setNumber(String name, Number value)
+	{
+		getTop().setNumber(name, value);
+	}
+
+	public void setString(String name, String value)
+	{
+		getTop().setString(name, value);
+	}
+
+	public void setList(String name, List<?> value)
+	{
+		getTop().setList(name, value);
+	}
+
+	/**
+	 * Returns the entries of the top layer that differ from what the lower layers resolve to.
+	 */
+	public JsonObject getDelta()
+	{
+		JsonConfiguration[] layers = getLayers();
+
+		if (layers[0] == null)
+			return new JsonObject();
+
+		JsonObject[] lower = new JsonObject[layers.length - 1];
+
+		for (int i = 1; i < layers.length; i++)
+			lower[i - 1] = layers[i] == null ? null : layers[i].getJson();
+
+		return delta(layers[0].getJson(), lower);
+	}
+
+	private static JsonObject delta(JsonObject top, JsonObject[] lower)
+	{
+		JsonObject delta = new JsonObject();
+
+		for (Map.Entry<String, JsonElement> entry : top.entrySet())
+		{
+			String key = entry.getKey();
+			JsonElement value = entry.getValue();
+			JsonElement base = null;
+
+			for (JsonObject layer : lower)
+			{
+				if (layer != null && (base = layer.get(key)) != null)
+					break;
+			}
+
+			if (value.isJsonObject() && base != null && base.isJsonObject())
+			{
+				JsonObject[] lowerChildren = new JsonObject[lower.length];
+
+				for (int i = 0; i < lower.length; i++)
+				{
+					JsonElement child = lower[i] == null ? null : lower[i].get(key);
+					lowerChildren[i] = child != null && child.isJsonObject() ? child.getAsJsonObject() : null;
+				}
+
+				JsonObject childDelta = delta(value.getAsJsonObject(), lowerChildren);
+
+				if (childDelta.size() > 0)
+					delta.add(key, childDelta);
+			}
+			else if (!value.equals(base))
+				delta.add(key, value);
+		}
+
+		return delta;
+	}
+
+	/**
+	 * Writes only the overrides of the top layer.
+	 */
+	public void save(File file) throws IOException
+	{
+		JsonIO.save(getDelta(), file);
+	}
+}
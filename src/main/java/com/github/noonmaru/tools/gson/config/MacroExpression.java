@@ -0,0 +1,1068 @@
+/*
+ * Copyright (c) 2019 Noonmaru
+ *
+ * Licensed under the General Public License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://opensource.org/licenses/gpl-2.0.php
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.github.noonmaru.tools.gson.config;
+
+import com.github.noonmaru.tools.asm.ClassDefiner;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+
+import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.ToDoubleFunction;
+
+import static org.objectweb.asm.Opcodes.*;
+
+/*
+ * Arithmetic and boolean expressions of EVAL(...), evaluated with JavaScript number semantics.
+ *
+ * Supported are number literals, true, false, NaN, Infinity, + - * / %, unary - + !, < <= > >= == != === !==,
+ * && ||, ?: and the functions of Math with or without the "Math." prefix. Values are doubles, booleans are 1 and 0
+ * and keep their type only for the result. Variables $0, $1... are read from an array; expressions using them are
+ * interpreted at first and compiled to bytecode once they have been evaluated often enough.
+ */
+final class MacroExpression
+{
+	static final int COMPILE_THRESHOLD = 64;
+
+	private static final AtomicInteger IDS = new AtomicInteger();
+
+	private static final String[] UNARY_FUNCTIONS = {"abs", "ceil", "floor", "round", "sqrt", "cbrt", "exp", "log", "log10", "sin", "cos", "tan", "asin", "acos", "atan"};
+
+	private static final String[] BINARY_FUNCTIONS = {"pow", "atan2", "min", "max"};
+
+	/**
+	 * @throws IllegalArgumentException if the expression cannot be parsed
+	 */
+	static MacroExpression parse(String source, boolean variables)
+	{
+		Parser parser = new Parser(source, variables);
+		Node root = parser.parseExpression();
+
+		if (parser.skipWhitespace() < source.length())
+			throw parser.error("Unexpected '" + source.charAt(parser.position) + "'");
+
+		return new MacroExpression(source, root, parser.variableCount);
+	}
+
+	private final String source;
+
+	private final Node root;
+
+	private final int variableCount;
+
+	private final Object constant;
+
+	private int evaluations;
+
+	private volatile ToDoubleFunction<double[]> compiled;
+
+	private MacroExpression(String source, Node root, int variableCount)
+	{
+		this.source = source;
+		this.root = root;
+		this.variableCount = variableCount;
+		this.constant = variableCount == 0 ? toResult(root.evaluate(null), root.isBoolean()) : null;
+	}
+
+	int getVariableCount()
+	{
+		return this.variableCount;
+	}
+
+	boolean isBoolean()
+	{
+		return this.root.isBoolean();
+	}
+
+	boolean isCompiled()
+	{
+		return this.compiled != null;
+	}
+
+	/*
+	 * Result of an expression without variables: Boolean for boolean expressions,
+	 * otherwise Integer or Long for integral values and Double for the rest.
+	 */
+	Object evaluate()
+	{
+		if (this.variableCount > 0)
+			throw new IllegalStateException("Expression has variables");
+
+		return this.constant;
+	}
+
+	double evaluate(double[] variables)
+	{
+		ToDoubleFunction<double[]> compiled = this.compiled;
+
+		if (compiled != null)
+			return compiled.applyAsDouble(variables);
+
+		// racy on purpose, a few extra interpreted evaluations do not matter
+		if (++this.evaluations == COMPILE_THRESHOLD && this.variableCount > 0)
+		{
+			this.compiled = compiled = compile();
+
+			return compiled.applyAsDouble(variables);
+		}
+
+		return this.root.evaluate(variables);
+	}
+
+	static Object toResult(double value, boolean isBoolean)
+	{
+		if (isBoolean)
+			return value != 0D;
+
+		if (value == Math.rint(value) && !Double.isInfinite(value))
+		{
+			if (value >= Integer.MIN_VALUE && value <= Integer.MAX_VALUE)
+				return (int) value;
+
+			if (value >= Long.MIN_VALUE && value <= Long.MAX_VALUE)
+				return (long) value;
+		}
+
+		return value;
+	}
+
+	/*
+	 * Appends the result like String.valueOf(toResult(value)) without boxing.
+	 */
+	static void appendResult(StringBuilder builder, double value, boolean isBoolean)
+	{
+		if (isBoolean)
+			builder.append(value != 0D);
+		else if (value == Math.rint(value) && !Double.isInfinite(value) && value >= Long.MIN_VALUE && value <= Long.MAX_VALUE)
+			builder.append((long) value);
+		else
+			builder.append(value);
+	}
+
+	private static boolean isTruthy(double value)
+	{
+		return value != 0D && value == value;
+	}
+
+	@SuppressWarnings("unchecked")
+	private ToDoubleFunction<double[]> compile()
+	{
+		String name = String.format("%s_%d", MacroExpression.class.getName(), IDS.getAndIncrement());
+
+		try
+		{
+			return (ToDoubleFunction<double[]>) ClassDefiner.defineClass(name, generateClass(name), MacroExpression.class.getClassLoader()).newInstance();
+		}
+		catch (InstantiationException | IllegalAccessException | RuntimeException e)
+		{
+			e.printStackTrace();
+
+			return this.root::evaluate;
+		}
+	}
+
+	private byte[] generateClass(String name)
+	{
+		ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_FRAMES);
+		String internalName = name.replace('.', '/');
+
+		cw.visit(V1_8, ACC_PUBLIC | ACC_FINAL | ACC_SUPER, internalName, null, "java/lang/Object", new String[]{"java/util/function/ToDoubleFunction"});
+		cw.visitSource(".dynamic", null);
+
+		{
+			MethodVisitor mv = cw.visitMethod(ACC_PUBLIC, "<init>", "()V", null, null);
+			mv.visitCode();
+			mv.visitVarInsn(ALOAD, 0);
+			mv.visitMethodInsn(INVOKESPECIAL, "java/lang/Object", "<init>", "()V", false);
+			mv.visitInsn(RETURN);
+			mv.visitMaxs(0, 0);
+			mv.visitEnd();
+		}
+
+		{
+			MethodVisitor mv = cw.visitMethod(ACC_PUBLIC, "applyAsDouble", "(Ljava/lang/Object;)D", null, null);
+			mv.visitCode();
+			mv.visitVarInsn(ALOAD, 1);
+			mv.visitTypeInsn(CHECKCAST, "[D");
+			mv.visitVarInsn(ASTORE, 2);
+			this.root.generate(mv, new int[]{3});
+			mv.visitInsn(DRETURN);
+			mv.visitMaxs(0, 0);
+			mv.visitEnd();
+		}
+
+		cw.visitEnd();
+
+		return cw.toByteArray();
+	}
+
+	/*
+	 * Pushes 1 if the double in the local is truthy, otherwise 0.
+	 */
+	private static void generateTruthy(MethodVisitor mv, int local)
+	{
+		Label falsy = new Label();
+		Label end = new Label();
+
+		mv.visitVarInsn(DLOAD, local);
+		mv.visitVarInsn(DLOAD, local);
+		mv.visitInsn(DCMPL);
+		mv.visitJumpInsn(IFNE, falsy); // NaN
+		mv.visitVarInsn(DLOAD, local);
+		mv.visitInsn(DCONST_0);
+		mv.visitInsn(DCMPL);
+		mv.visitJumpInsn(IFEQ, falsy);
+		mv.visitInsn(ICONST_1);
+		mv.visitJumpInsn(GOTO, end);
+		mv.visitLabel(falsy);
+		mv.visitInsn(ICONST_0);
+		mv.visitLabel(end);
+	}
+
+	private static void generateBoolean(MethodVisitor mv, int jumpIfTrue)
+	{
+		Label isTrue = new Label();
+		Label end = new Label();
+
+		mv.visitJumpInsn(jumpIfTrue, isTrue);
+		mv.visitInsn(DCONST_0);
+		mv.visitJumpInsn(GOTO, end);
+		mv.visitLabel(isTrue);
+		mv.visitInsn(DCONST_1);
+		mv.visitLabel(end);
+	}
+
+	private static int allocate(int[] locals)
+	{
+		int local = locals[0];
+		locals[0] += 2;
+
+		return local;
+	}
+
+	@Override
+	public String toString()
+	{
+		return this.source;
+	}
+
+	private static abstract class Node
+	{
+		abstract double evaluate(double[] variables);
+
+		abstract void generate(MethodVisitor mv, int[] locals);
+
+		boolean isBoolean()
+		{
+			return false;
+		}
+	}
+
+	private static final class Constant extends Node
+	{
+		final double value;
+
+		final boolean isBoolean;
+
+		Constant(double value, boolean isBoolean)
+		{
+			this.value = value;
+			this.isBoolean = isBoolean;
+		}
+
+		@Override
+		double evaluate(double[] variables)
+		{
+			return this.value;
+		}
+
+		@Override
+		void generate(MethodVisitor mv, int[] locals)
+		{
+			if (this.value == 0D && 1D / this.value > 0D)
+				mv.visitInsn(DCONST_0);
+			else if (this.value == 1D)
+				mv.visitInsn(DCONST_1);
+			else
+				mv.visitLdcInsn(this.value);
+		}
+
+		@Override
+		boolean isBoolean()
+		{
+			return this.isBoolean;
+		}
+	}
+
+	private static final class Variable extends Node
+	{
+		final int index;
+
+		Variable(int index)
+		{
+			this.index = index;
+		}
+
+		@Override
+		double evaluate(double[] variables)
+		{
+			return variables[this.index];
+		}
+
+		@Override
+		void generate(MethodVisitor mv, int[] locals)
+		{
+			mv.visitVarInsn(ALOAD, 2);
+			mv.visitLdcInsn(this.index);
+			mv.visitInsn(DALOAD);
+		}
+	}
+
+	private static final class Unary extends Node
+	{
+		final char operator;
+
+		final Node operand;
+
+		Unary(char operator, Node operand)
+		{
+			this.operator = operator;
+			this.operand = operand;
+		}
+
+		@Override
+		double evaluate(double[] variables)
+		{
+			double value = this.operand.evaluate(variables);
+
+			switch (this.operator)
+			{
+				case '-':
+					return -value;
+				case '!':
+					return isTruthy(value) ? 0D : 1D;
+				default:
+					return value;
+			}
+		}
+
+		@Override
+		void generate(MethodVisitor mv, int[] locals)
+		{
+			this.operand.generate(mv, locals);
+
+			if (this.operator == '-')
+				mv.visitInsn(DNEG);
+			else if (this.operator == '!')
+			{
+				int local = allocate(locals);
+				mv.visitVarInsn(DSTORE, local);
+				generateTruthy(mv, local);
+				generateBoolean(mv, IFEQ);
+			}
+		}
+
+		@Override
+		boolean isBoolean()
+		{
+			return this.operator == '!';
+		}
+	}
+
+	private static final class Binary extends Node
+	{
+		final String operator;
+
+		final Node left;
+
+		final Node right;
+
+		Binary(String operator, Node left, Node right)
+		{
+			this.operator = operator;
+			this.left = left;
+			this.right = right;
+		}
+
+		@Override
+		double evaluate(double[] variables)
+		{
+			double left = this.left.evaluate(variables);
+
+			switch (this.operator)
+			{
+				case "&&":
+					return isTruthy(left) ? this.right.evaluate(variables) : left;
+				case "||":
+					return isTruthy(left) ? left : this.right.evaluate(variables);
+			}
+
+			double right = this.right.evaluate(variables);
+
+			switch (this.operator)
+			{
+				case "+":
+					return left + right;
+				case "-":
+					return left - right;
+				case "*":
+					return left * right;
+				case "/":
+					return left / right;
+				case "%":
+					return left % right;
+				case "<":
+					return left < right ? 1D : 0D;
+				case "<=":
+					return left <= right ? 1D : 0D;
+				case ">":
+					return left > right ? 1D : 0D;
+				case ">=":
+					return left >= right ? 1D : 0D;
+				case "==":
+					return left == right ? 1D : 0D;
+				default: // !=
+					return left != right ? 1D : 0D;
+			}
+		}
+
+		@Override
+		void generate(MethodVisitor mv, int[] locals)
+		{
+			String operator = this.operator;
+
+			if (operator.equals("&&") || operator.equals("||"))
+			{
+				Label other = new Label();
+				Label end = new Label();
+				int local = allocate(locals);
+
+				this.left.generate(mv, locals);
+				mv.visitVarInsn(DSTORE, local);
+				generateTruthy(mv, local);
+				mv.visitJumpInsn(operator.equals("&&") ? IFNE : IFEQ, other);
+				mv.visitVarInsn(DLOAD, local);
+				mv.visitJumpInsn(GOTO, end);
+				mv.visitLabel(other);
+				this.right.generate(mv, locals);
+				mv.visitLabel(end);
+
+				return;
+			}
+
+			this.left.generate(mv, locals);
+			this.right.generate(mv, locals);
+
+			switch (operator)
+			{
+				case "+":
+					mv.visitInsn(DADD);
+					break;
+				case "-":
+					mv.visitInsn(DSUB);
+					break;
+				case "*":
+					mv.visitInsn(DMUL);
+					break;
+				case "/":
+					mv.visitInsn(DDIV);
+					break;
+				case "%":
+					mv.visitInsn(DREM);
+					break;
+				// DCMPG turns NaN into 1 and DCMPL into -1, so every comparison with NaN is false except !=
+				case "<":
+					mv.visitInsn(DCMPG);
+					generateBoolean(mv, IFLT);
+					break;
+				case "<=":
+					mv.visitInsn(DCMPG);
+					generateBoolean(mv, IFLE);
+					break;
+				case ">":
+					mv.visitInsn(DCMPL);
+					generateBoolean(mv, IFGT);
+					break;
+				case ">=":
+					mv.visitInsn(DCMPL);
+					generateBoolean(mv, IFGE);
+					break;
+				case "==":
+					mv.visitInsn(DCMPL);
+					generateBoolean(mv, IFEQ);
+					break;
+				default:
+					mv.visitInsn(DCMPL);
+					generateBoolean(mv, IFNE);
+			}
+		}
+
+		@Override
+		boolean isBoolean()
+		{
+			switch (this.operator)
+			{
+				case "&&":
+				case "||":
+					return this.left.isBoolean() && this.right.isBoolean();
+				case "<":
+				case "<=":
+				case ">":
+				case ">=":
+				case "==":
+				case "!=":
+					return true;
+				default:
+					return false;
+			}
+		}
+	}
+
+	private static final class Conditional extends Node
+	{
+		final Node condition;
+
+		final Node then;
+
+		final Node otherwise;
+
+		Conditional(Node condition, Node then, Node otherwise)
+		{
+			this.condition = condition;
+			this.then = then;
+			this.otherwise = otherwise;
+		}
+
+		@Override
+		double evaluate(double[] variables)
+		{
+			return isTruthy(this.condition.evaluate(variables)) ? this.then.evaluate(variables) : this.otherwise.evaluate(variables);
+		}
+
+		@Override
+		void generate(MethodVisitor mv, int[] locals)
+		{
+			Label otherwise = new Label();
+			Label end = new Label();
+			int local = allocate(locals);
+
+			this.condition.generate(mv, locals);
+			mv.visitVarInsn(DSTORE, local);
+			generateTruthy(mv, local);
+			mv.visitJumpInsn(IFEQ, otherwise);
+			this.then.generate(mv, locals);
+			mv.visitJumpInsn(GOTO, end);
+			mv.visitLabel(otherwise);
+			this.otherwise.generate(mv, locals);
+			mv.visitLabel(end);
+		}
+
+		@Override
+		boolean isBoolean()
+		{
+			return this.then.isBoolean() && this.otherwise.isBoolean();
+		}
+	}
+
+	private static final class Call extends Node
+	{
+		final String function;
+
+		final Node[] arguments;
+
+		Call(String function, Node[] arguments)
+		{
+			this.function = function;
+			this.arguments = arguments;
+		}
+
+		@Override
+		double evaluate(double[] variables)
+		{
+			Node[] arguments = this.arguments;
+			double a = arguments[0].evaluate(variables);
+
+			switch (this.function)
+			{
+				case "abs":
+					return Math.abs(a);
+				case "ceil":
+					return Math.ceil(a);
+				case "floor":
+					return Math.floor(a);
+				case "round":
+					double floor = Math.floor(a);
+
+					// copySign keeps -0 for [-0.5, 0), as Math.round in JavaScript
+					return a - floor >= 0.5D ? Math.copySign(floor + 1D, a) : floor;
+				case "sqrt":
+					return Math.sqrt(a);
+				case "cbrt":
+					return Math.cbrt(a);
+				case "exp":
+					return Math.exp(a);
+				case "log":
+					return Math.log(a);
+				case "log10":
+					return Math.log10(a);
+				case "sin":
+					return Math.sin(a);
+				case "cos":
+					return Math.cos(a);
+				case "tan":
+					return Math.tan(a);
+				case "asin":
+					return Math.asin(a);
+				case "acos":
+					return Math.acos(a);
+				case "atan":
+					return Math.atan(a);
+				case "pow":
+					return Math.pow(a, arguments[1].evaluate(variables));
+				case "atan2":
+					return Math.atan2(a, arguments[1].evaluate(variables));
+				case "min":
+					for (int i = 1; i < arguments.length; i++)
+						a = Math.min(a, arguments[i].evaluate(variables));
+
+					return a;
+				default: // max
+					for (int i = 1; i < arguments.length; i++)
+						a = Math.max(a, arguments[i].evaluate(variables));
+
+					return a;
+			}
+		}
+
+		@Override
+		void generate(MethodVisitor mv, int[] locals)
+		{
+			Node[] arguments = this.arguments;
+			String function = this.function;
+
+			arguments[0].generate(mv, locals);
+
+			if (function.equals("round"))
+			{
+				int value = allocate(locals);
+				int floor = allocate(locals);
+				Label down = new Label();
+				Label end = new Label();
+
+				mv.visitVarInsn(DSTORE, value);
+				mv.visitVarInsn(DLOAD, value);
+				mv.visitMethodInsn(INVOKESTATIC, "java/lang/Math", "floor", "(D)D", false);
+				mv.visitVarInsn(DSTORE, floor);
+				mv.visitVarInsn(DLOAD, value);
+				mv.visitVarInsn(DLOAD, floor);
+				mv.visitInsn(DSUB);
+				mv.visitLdcInsn(0.5D);
+				mv.visitInsn(DCMPL);
+				mv.visitJumpInsn(IFLT, down); // NaN as well
+				mv.visitVarInsn(DLOAD, floor);
+				mv.visitInsn(DCONST_1);
+				mv.visitInsn(DADD);
+				mv.visitVarInsn(DLOAD, value);
+				mv.visitMethodInsn(INVOKESTATIC, "java/lang/Math", "copySign", "(DD)D", false);
+				mv.visitJumpInsn(GOTO, end);
+				mv.visitLabel(down);
+				mv.visitVarInsn(DLOAD, floor);
+				mv.visitLabel(end);
+			}
+			else if (Parser.arity(function) == 1)
+				mv.visitMethodInsn(INVOKESTATIC, "java/lang/Math", function, "(D)D", false);
+			else
+			{
+				for (int i = 1; i < arguments.length; i++)
+				{
+					arguments[i].generate(mv, locals);
+					mv.visitMethodInsn(INVOKESTATIC, "java/lang/Math", function, "(DD)D", false);
+				}
+			}
+		}
+	}
+
+	private static final class Parser
+	{
+		final String source;
+
+		final boolean variables;
+
+		int position;
+
+		int variableCount;
+
+		Parser(String source, boolean variables)
+		{
+			this.source = source;
+			this.variables = variables;
+		}
+
+		IllegalArgumentException error(String message)
+		{
+			return new IllegalArgumentException(message + " at " + this.position + " in " + this.source);
+		}
+
+		int skipWhitespace()
+		{
+			String source = this.source;
+			int position = this.position;
+
+			while (position < source.length() && Character.isWhitespace(source.charAt(position)))
+				position++;
+
+			return this.position = position;
+		}
+
+		boolean accept(String token)
+		{
+			skipWhitespace();
+
+			if (!this.source.startsWith(token, this.position))
+				return false;
+
+			this.position += token.length();
+
+			return true;
+		}
+
+		boolean peek(String token)
+		{
+			skipWhitespace();
+
+			return this.source.startsWith(token, this.position);
+		}
+
+		void expect(String token)
+		{
+			if (!accept(token))
+				throw error("Expected '" + token + "'");
+		}
+
+		Node parseExpression()
+		{
+			Node condition = parseOr();
+
+			if (accept("?"))
+			{
+				Node then = parseExpression();
+				expect(":");
+
+				return new Conditional(condition, then, parseExpression());
+			}
+
+			return condition;
+		}
+
+		Node parseOr()
+		{
+			Node node = parseAnd();
+
+			while (accept("||"))
+				node = new Binary("||", node, parseAnd());
+
+			return node;
+		}
+
+		Node parseAnd()
+		{
+			Node node = parseEquality();
+
+			while (accept("&&"))
+				node = new Binary("&&", node, parseEquality());
+
+			return node;
+		}
+
+		Node parseEquality()
+		{
+			Node node = parseRelational();
+
+			while (true)
+			{
+				if (accept("===") || accept("=="))
+					node = new Binary("==", node, parseRelational());
+				else if (accept("!==") || accept("!="))
+					node = new Binary("!=", node, parseRelational());
+				else
+					return node;
+			}
+		}
+
+		Node parseRelational()
+		{
+			Node node = parseAdditive();
+
+			while (true)
+			{
+				if (accept("<="))
+					node = new Binary("<=", node, parseAdditive());
+				else if (accept(">="))
+					node = new Binary(">=", node, parseAdditive());
+				else if (accept("<"))
+					node = new Binary("<", node, parseAdditive());
+				else if (accept(">"))
+					node = new Binary(">", node, parseAdditive());
+				else
+					return node;
+			}
+		}
+
+		Node parseAdditive()
+		{
+			Node node = parseMultiplicative();
+
+			while (true)
+			{
+				if (accept("+"))
+					node = new Binary("+", node, parseMultiplicative());
+				else if (accept("-"))
+					node = new Binary("-", node, parseMultiplicative());
+				else
+					return node;
+			}
+		}
+
+		Node parseMultiplicative()
+		{
+			Node node = parseUnary();
+
+			while (true)
+			{
+				if (accept("*"))
+					node = new Binary("*", node, parseUnary());
+				else if (accept("/"))
+					node = new Binary("/", node, parseUnary());
+				else if (accept("%"))
+					node = new Binary("%", node, parseUnary());
+				else
+					return node;
+			}
+		}
+
+		Node parseUnary()
+		{
+			if (accept("-"))
+				return fold(new Unary('-', parseUnary()));
+			if (accept("+"))
+				return fold(new Unary('+', parseUnary()));
+			if (!peek("!=") && accept("!"))
+				return fold(new Unary('!', parseUnary()));
+
+			return parsePrimary();
+		}
+
+		Node parsePrimary()
+		{
+			skipWhitespace();
+
+			String source = this.source;
+			int start = this.position;
+
+			if (start >= source.length())
+				throw error("Unexpected end");
+
+			char c = source.charAt(start);
+
+			if (c == '(')
+			{
+				this.position++;
+				Node node = parseExpression();
+				expect(")");
+
+				return node;
+			}
+
+			if (c >= '0' && c <= '9' || c == '.')
+				return parseNumber();
+
+			if (c == '$' && this.variables)
+			{
+				int end = start + 1;
+
+				while (end < source.length() && Character.isDigit(source.charAt(end)))
+					end++;
+
+				if (end == start + 1)
+					throw error("Expected variable index");
+
+				int index = Integer.parseInt(source.substring(start + 1, end));
+				this.position = end;
+				this.variableCount = Math.max(this.variableCount, index + 1);
+
+				return new Variable(index);
+			}
+
+			if (Character.isJavaIdentifierStart(c))
+				return parseIdentifier();
+
+			throw error("Unexpected '" + c + "'");
+		}
+
+		Node parseNumber()
+		{
+			String source = this.source;
+			int start = this.position;
+			int end = start;
+
+			while (end < source.length())
+			{
+				char c = source.charAt(end);
+
+				if (c >= '0' && c <= '9' || c == '.')
+					end++;
+				else if ((c == 'e' || c == 'E') && end > start)
+				{
+					end++;
+
+					if (end < source.length() && (source.charAt(end) == '+' || source.charAt(end) == '-'))
+						end++;
+				}
+				else
+					break;
+			}
+
+			try
+			{
+				double value = Double.parseDouble(source.substring(start, end));
+				this.position = end;
+
+				return new Constant(value, false);
+			}
+			catch (NumberFormatException e)
+			{
+				throw error("Illegal number");
+			}
+		}
+
+		Node parseIdentifier()
+		{
+			String name = parseName();
+
+			if (name.equals("Math") && accept("."))
+			{
+				name = parseName();
+
+				if (name.equals("PI"))
+					return new Constant(Math.PI, false);
+				if (name.equals("E"))
+					return new Constant(Math.E, false);
+			}
+
+			switch (name)
+			{
+				case "true":
+					return new Constant(1D, true);
+				case "false":
+					return new Constant(0D, true);
+				case "NaN":
+					return new Constant(Double.NaN, false);
+				case "Infinity":
+					return new Constant(Double.POSITIVE_INFINITY, false);
+			}
+
+			int arity = arity(name);
+
+			if (arity == 0)
+				throw error("Unknown name '" + name + "'");
+
+			expect("(");
+			ArrayList<Node> arguments = new ArrayList<>();
+
+			if (!accept(")"))
+			{
+				do
+					arguments.add(parseExpression());
+				while (accept(","));
+
+				expect(")");
+			}
+
+			int count = arguments.size();
+
+			// like JavaScript, min and max take any number of arguments
+			if (name.equals("min") || name.equals("max"))
+			{
+				if (count == 0)
+					return new Constant(name.equals("min") ? Double.POSITIVE_INFINITY : Double.NEGATIVE_INFINITY, false);
+			}
+			else if (count != arity)
+				throw error("Wrong number of arguments for '" + name + "'");
+
+			return fold(new Call(name, arguments.toArray(new Node[0])));
+		}
+
+		String parseName()
+		{
+			skipWhitespace();
+
+			String source = this.source;
+			int start = this.position;
+			int end = start;
+
+			while (end < source.length() && Character.isJavaIdentifierPart(source.charAt(end)) && source.charAt(end) != '$')
+				end++;
+
+			if (end == start)
+				throw error("Expected name");
+
+			this.position = end;
+
+			return source.substring(start, end);
+		}
+
+		private static int arity(String name)
+		{
+			for (String function : UNARY_FUNCTIONS)
+			{
+				if (function.equals(name))
+					return 1;
+			}
+
+			for (String function : BINARY_FUNCTIONS)
+			{
+				if (function.equals(name))
+					return 2;
+			}
+
+			return 0;
+		}
+
+		/*
+		 * Folds calls and unary operators on constants, binary operators fold in the interpreter anyway.
+		 */
+		private static Node fold(Node node)
+		{
+			if (node instanceof Unary && ((Unary) node).operand instanceof Constant)
+				return new Constant(node.evaluate(null), node.isBoolean());
+
+			if (node instanceof Call)
+			{
+				for (Node argument : ((Call) node).arguments)
+				{
+					if (!(argument instanceof Constant))
+						return node;
+				}
+
+				return new Constant(node.evaluate(null), false);
+			}
+
+			return node;
+		}
+	}
+}
@@ -0,0 +1,596 @@
+/*
+ * Copyright (c) 2019 Noonmaru
+ *
+ * Licensed under the General Public License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://opensource.org/licenses/gpl-2.0.php
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.github.noonmaru.tools.gson.config;
+
+import com.google.gson.JsonElement;
+
+import java.text.DecimalFormat;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * A {@link JsonMacro} string parsed once into literals, {@code [path]} references, {@code EVAL(...)}
+ * and {@code FORMAT(...)} nodes, see {@link JsonMacro#compile(String)}.
+ * <p>
+ * Templates are immutable and may be rendered by any number of threads. References are expanded first,
+ * then EVAL and then FORMAT, exactly like the text passes of the original implementation, except that
+ * parentheses inside referenced values no longer take part in matching. A referenced string that is itself
+ * a macro is expanded in place, a reference that leads back to itself throws {@link IllegalArgumentException}.
+ * <p>
+ * Renders are remembered per config along with the elements they read, and a result is reused while every
+ * one of them is still the very same element. Any write replaces the element, whether it went through this
+ * config, another config over the same json or {@link JsonConfiguration#getJson()}, so nothing stale is returned.
+ * Renders that read a whole object or array are not reused, those can change in place.
+ */
+public final class MacroTemplate
+{
+	// stands for the next entry of Flat.nodes in the flattened text, a noncharacter that text does not use
+	private static final char MARK = '\uFFFF';
+
+	private static final ThreadLocal<StringBuilder> BUILDERS = ThreadLocal.withInitial(() -> new StringBuilder(256));
+
+	private static final ThreadLocal<HashMap<String, DecimalFormat>> FORMATS = ThreadLocal.withInitial(HashMap::new);
+
+	private static final ThreadLocal<Context> CONTEXTS = ThreadLocal.withInitial(Context::new);
+
+	static MacroTemplate compile(String s)
+	{
+		Flat flat = parseRefs(s);
+		flat = flat.extract("EVAL(", Eval::new);
+		flat = flat.extract("FORMAT(", Format::new);
+
+		return new MacroTemplate(s, flat.toNodes());
+	}
+
+	private final String source;
+
+	private final Node[] nodes;
+
+	private MacroTemplate(String source, Node[] nodes)
+	{
+		this.source = source;
+		this.nodes = nodes;
+	}
+
+	public String getSource()
+	{
+		return this.source;
+	}
+
+	/**
+	 * Returns true if rendering does not depend on any config.
+	 */
+	public boolean isConstant()
+	{
+		return this.nodes.length == 0 || (this.nodes.length == 1 && this.nodes[0] instanceof Literal);
+	}
+
+	public String render(JsonConfiguration config)
+	{
+		Node[] nodes = this.nodes;
+
+		if (nodes.length == 0)
+			return "";
+
+		if (nodes.length == 1 && nodes[0] instanceof Literal)
+			return ((Literal) nodes[0]).text;
+
+		Memo memo = config.getMacroMemo(this);
+
+		if (memo != null && memo.isValid(config))
+			return memo.value;
+
+		Context context = CONTEXTS.get();
+		ArrayList<Dependency> outer = context.dependencies;
+		ArrayList<Dependency> dependencies = new ArrayList<>();
+		StringBuilder builder = BUILDERS.get();
+		int start = builder.length(); // nested renders on this thread append after the caller's text
+		String value;
+
+		context.dependencies = dependencies;
+
+		try
+		{
+			render(nodes, config, builder);
+			value = builder.substring(start);
+		}
+		finally
+		{
+			builder.setLength(start);
+			context.dependencies = outer;
+		}
+
+		if (outer != null)
+			outer.addAll(dependencies);
+
+		config.putMacroMemo(this, new Memo(value, dependencies.toArray(new Dependency[0])));
+
+		return value;
+	}
+
+	/*
+	 * Reads a referenced element and records it for the render in progress.
+	 */
+	private static JsonElement resolve(JsonConfiguration config, String name)
+	{
+		JsonElement element = config.getElement(name);
+		ArrayList<Dependency> dependencies = CONTEXTS.get().dependencies;
+
+		if (dependencies != null)
+			dependencies.add(new Dependency(name, element));
+
+		return element;
+	}
+
+	private static boolean isMacro(String s)
+	{
+		return s.indexOf('[') >= 0 || s.contains("EVAL(") || s.contains("FORMAT(");
+	}
+
+	private static void render(Node[] nodes, JsonConfiguration config, StringBuilder builder)
+	{
+		for (Node node : nodes)
+			node.render(config, builder);
+	}
+
+	/*
+	 * Renders the nodes at the end of the builder and cuts them off again as a string.
+	 */
+	private static String renderArgument(Node[] nodes, JsonConfiguration config, StringBuilder builder)
+	{
+		int start = builder.length();
+		render(nodes, config, builder);
+		String argument = builder.substring(start);
+		builder.setLength(start);
+
+		return argument;
+	}
+
+	private static Flat parseRefs(String s)
+	{
+		StringBuilder text = new StringBuilder(s.length());
+		ArrayList<Node> nodes = new ArrayList<>();
+
+		for (int i = 0, length = s.length(); i < length; i++)
+		{
+			char c = s.charAt(i);
+
+			if (c == '[')
+			{
+				int close = s.indexOf(']', i + 1);
+
+				if (close > i + 1)
+				{
+					nodes.add(new Ref(s.substring(i + 1, close)));
+					text.append(MARK);
+					i = close;
+					continue;
+				}
+			}
+			else if (c == MARK)
+			{
+				nodes.add(new Literal(String.valueOf(MARK)));
+			}
+
+			text.append(c);
+		}
+
+		return new Flat(text.toString(), nodes);
+	}
+
+	@FunctionalInterface
+	private interface NodeFactory
+	{
+		Node create(Node[] argument);
+	}
+
+	/*
+	 * Text in which every MARK stands for the next node, in order.
+	 */
+	private static final class Flat
+	{
+		final String text;
+
+		final List<Node> nodes;
+
+		Flat(String text, List<Node> nodes)
+		{
+			this.text = text;
+			this.nodes = nodes;
+		}
+
+		private int countMarks(int end)
+		{
+			int count = 0;
+
+			for (int i = 0; i < end; i++)
+			{
+				if (this.text.charAt(i) == MARK)
+					count++;
+			}
+
+			return count;
+		}
+
+		Flat sub(int begin, int end)
+		{
+			int first = countMarks(begin);
+			int last = first;
+
+			for (int i = begin; i < end; i++)
+			{
+				if (this.text.charAt(i) == MARK)
+					last++;
+			}
+
+			return new Flat(this.text.substring(begin, end), this.nodes.subList(first, last));
+		}
+
+		/*
+		 * Replaces every keyword(...) with balanced parentheses by a node built from its argument.
+		 * An unbalanced occurrence ends the search and stays text.
+		 */
+		Flat extract(String keyword, NodeFactory factory)
+		{
+			String text = this.text;
+			int index = text.indexOf(keyword);
+
+			if (index < 0)
+				return this;
+
+			StringBuilder result = new StringBuilder(text.length());
+			ArrayList<Node> nodes = new ArrayList<>();
+			int copied = 0;
+
+			find:
+			while (index >= 0)
+			{
+				int open = index + keyword.length();
+				int depth = 0;
+
+				for (int i = open, length = text.length(); i < length; i++)
+				{
+					char c = text.charAt(i);
+
+					if (c == '(')
+						depth++;
+					else if (c == ')' && depth-- == 0)
+					{
+						Flat before = sub(copied, index);
+						result.append(before.text);
+						nodes.addAll(before.nodes);
+
+						result.append(MARK);
+						nodes.add(factory.create(sub(open, i).toNodes()));
+
+						copied = i + 1;
+						index = text.indexOf(keyword, copied);
+						continue find;
+					}
+				}
+
+				break;
+			}
+
+			Flat rest = sub(copied, text.length());
+			result.append(rest.text);
+			nodes.addAll(rest.nodes);
+
+			return new Flat(result.toString(), nodes);
+		}
+
+		Node[] toNodes()
+		{
+			String text = this.text;
+			ArrayList<Node> nodes = new ArrayList<>();
+			int markIndex = 0;
+			int start = 0;
+
+			for (int i = 0, length = text.length(); i <= length; i++)
+			{
+				if (i == length || text.charAt(i) == MARK)
+				{
+					if (i > start)
+						nodes.add(new Literal(text.substring(start, i)));
+
+					if (i < length)
+						nodes.add(this.nodes.get(markIndex++));
+
+					start = i + 1;
+				}
+			}
+
+			return nodes.toArray(new Node[0]);
+		}
+	}
+
+	private static final class Context
+	{
+		// elements read by the outermost render in progress, null when not rendering
+		ArrayList<Dependency> dependencies;
+
+		// references being expanded, innermost last
+		final ArrayList<String> expanding = new ArrayList<>();
+	}
+
+	private static final class Dependency
+	{
+		final String name;
+
+		final JsonElement element;
+
+		Dependency(String name, JsonElement element)
+		{
+			this.name = name;
+			this.element = element;
+		}
+
+		/*
+		 * Setters always store a new element, so the same primitive means the same value.
+		 * Objects and arrays can change in place and are not trusted.
+		 */
+		boolean isValid(JsonConfiguration config)
+		{
+			JsonElement element = this.element;
+
+			return (element == null || element.isJsonPrimitive() || element.isJsonNull()) && config.getElement(this.name) == element;
+		}
+	}
+
+	static final class Memo
+	{
+		final String value;
+
+		final Dependency[] dependencies;
+
+		Memo(String value, Dependency[] dependencies)
+		{
+			this.value = value;
+			this.dependencies = dependencies;
+		}
+
+		/*
+		 * The lookups are checked every time rather than trusting the modCount of the config, which does not
+		 * see writes made through other configs over the same json or through getJson().
+		 */
+		boolean isValid(JsonConfiguration config)
+		{
+			for (Dependency dependency : this.dependencies)
+			{
+				if (!dependency.isValid(config))
+					return false;
+			}
+
+			return true;
+		}
+	}
+
+	private interface Node
+	{
+		void render(JsonConfiguration config, StringBuilder builder);
+	}
+
+	private static final class Literal implements Node
+	{
+		final String text;
+
+		Literal(String text)
+		{
+			this.text = text;
+		}
+
+		@Override
+		public void render(JsonConfiguration config, StringBuilder builder)
+		{
+			builder.append(this.text);
+		}
+	}
+
+	/*
+	 * A value that is missing or null leaves the reference as it was written.
+	 * A string value containing a macro is rendered against the same config.
+	 */
+	private static final class Ref implements Node
+	{
+		final String name;
+
+		Ref(String name)
+		{
+			this.name = name;
+		}
+
+		@Override
+		public void render(JsonConfiguration config, StringBuilder builder)
+		{
+			JsonElement element = resolve(config, this.name);
+
+			if (element == null || element.isJsonNull())
+				builder.append('[').append(this.name).append(']');
+			else if (element.isJsonPrimitive())
+			{
+				String value = element.getAsString();
+
+				if (element.getAsJsonPrimitive().isString() && isMacro(value))
+					expand(JsonMacro.compile(value), config, builder);
+				else
+					builder.append(value);
+			}
+			else
+				builder.append(String.valueOf(config.<Object>get(this.name)));
+		}
+
+		private void expand(MacroTemplate template, JsonConfiguration config, StringBuilder builder)
+		{
+			ArrayList<String> expanding = CONTEXTS.get().expanding;
+
+			if (expanding.contains(this.name))
+			{
+				StringBuilder cycle = new StringBuilder("Macro reference cycle: ");
+
+				for (String name : expanding.subList(expanding.indexOf(this.name), expanding.size()))
+					cycle.append('[').append(name).append("] -> ");
+
+				throw new IllegalArgumentException(cycle.append('[').append(this.name).append(']').toString());
+			}
+
+			expanding.add(this.name);
+
+			try
+			{
+				MacroTemplate.render(template.nodes, config, builder);
+			}
+			finally
+			{
+				expanding.remove(expanding.size() - 1);
+			}
+		}
+	}
+
+	/*
+	 * When the script is literals and references only, it is parsed once with the references as variables,
+	 * so numeric values are passed in without going through text. Anything else, or a reference that is not
+	 * a number at render time, is rendered as text and evaluated like before.
+	 */
+	private static final class Eval implements Node
+	{
+		final Node[] script;
+
+		final Ref[] refs;
+
+		final MacroExpression expression;
+
+		Eval(Node[] script)
+		{
+			this.script = script;
+
+			StringBuilder source = new StringBuilder();
+			ArrayList<Ref> refs = new ArrayList<>();
+			MacroExpression expression = null;
+
+			for (Node node : script)
+			{
+				if (node instanceof Ref)
+				{
+					source.append(" $").append(refs.size()).append(' ');
+					refs.add((Ref) node);
+				}
+				else if (node instanceof Literal && ((Literal) node).text.indexOf('$') < 0)
+					source.append(((Literal) node).text);
+				else
+				{
+					refs = null;
+					break;
+				}
+			}
+
+			if (refs != null && !refs.isEmpty())
+			{
+				try
+				{
+					expression = MacroExpression.parse(source.toString(), true);
+				}
+				catch (IllegalArgumentException e)
+				{
+					// e.g. a reference inside a number, the text path handles it
+				}
+			}
+
+			this.refs = expression == null ? null : refs.toArray(new Ref[0]);
+			this.expression = expression;
+		}
+
+		@Override
+		public void render(JsonConfiguration config, StringBuilder builder)
+		{
+			MacroExpression expression = this.expression;
+
+			if (expression != null)
+			{
+				Ref[] refs = this.refs;
+				double[] variables = new double[refs.length];
+				boolean numeric = true;
+
+				for (int i = 0; i < refs.length; i++)
+				{
+					JsonElement element = resolve(config, refs[i].name);
+
+					if (element == null || !element.isJsonPrimitive() || !element.getAsJsonPrimitive().isNumber())
+					{
+						numeric = false;
+						break;
+					}
+
+					variables[i] = element.getAsDouble();
+				}
+
+				if (numeric)
+				{
+					MacroExpression.appendResult(builder, expression.evaluate(variables), expression.isBoolean());
+					return;
+				}
+			}
+
+			builder.append(JsonMacro.eval(renderArgument(this.script, config, builder)));
+		}
+	}
+
+	/*
+	 * FORMAT(value) or FORMAT(value, pattern), patterns are cached per thread since DecimalFormat is not thread safe.
+	 */
+	private static final class Format implements Node
+	{
+		final Node[] argument;
+
+		Format(Node[] argument)
+		{
+			this.argument = argument;
+		}
+
+		@Override
+		public void render(JsonConfiguration config, StringBuilder builder)
+		{
+			String argument = renderArgument(this.argument, config, builder);
+			int comma = argument.indexOf(',');
+			String value = argument;
+			String pattern = "#.##";
+
+			if (comma >= 0)
+			{
+				value = argument.substring(0, comma);
+
+				String rest = argument.substring(comma + 1).trim();
+
+				if (!rest.isEmpty() && rest.indexOf(',') < 0)
+					pattern = rest;
+			}
+
+			builder.append(getFormat(pattern).format(Double.parseDouble(value)));
+		}
+
+		private static DecimalFormat getFormat(String pattern)
+		{
+			HashMap<String, DecimalFormat> formats = FORMATS.get();
+			DecimalFormat format = formats.get(pattern);
+
+			if (format == null)
+				formats.put(pattern, format = new DecimalFormat(pattern));
+
+			return format;
+		}
+	}
+}
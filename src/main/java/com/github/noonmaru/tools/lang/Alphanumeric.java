@@ -16,6 +16,10 @@
 
 package com.github.noonmaru.tools.lang;
 
+/**
+ * Natural order of strings, runs of digits compare by their numeric value.
+ * Runs are compared in place, so comparing allocates nothing and numbers may be of any length.
+ */
 public final class Alphanumeric
 {
     public static int compare(String o1, String o2)
@@ -27,60 +31,61 @@ public final class Alphanumeric
 
         while (thisMarker < s1Length && thatMarker < s2Length)
         {
-            String thisChunk = getChunk(o1, s1Length, thisMarker);
-            thisMarker += thisChunk.length();
-
-            String thatChunk = getChunk(o2, s2Length, thatMarker);
-            thatMarker += thatChunk.length();
+            int thisEnd = getChunkEnd(o1, s1Length, thisMarker);
+            int thatEnd = getChunkEnd(o2, s2Length, thatMarker);
+            int thisChunkLength = thisEnd - thisMarker;
+            int thatChunkLength = thatEnd - thatMarker;
 
-            int result = 0;
-            if (isDigit(thisChunk.charAt(0)) && isDigit(thatChunk.charAt(0)))
+            int result;
+            if (isDigit(o1.charAt(thisMarker)) && isDigit(o2.charAt(thatMarker)))
             {
-                int thisChunkLength = thisChunk.length();
-                result = thisChunkLength - thatChunk.length();
+                // without leading zeros removed, a longer run is a larger number
+                result = thisChunkLength - thatChunkLength;
                 if (result == 0)
-                    for (int i = 0; i < thisChunkLength; i++)
-                    {
-                        result = thisChunk.charAt(i) - thatChunk.charAt(i);
-                        if (result != 0)
-                            return result;
-                    }
+                    result = compareChars(o1, thisMarker, o2, thatMarker, thisChunkLength);
             }
             else
-                result = thisChunk.compareTo(thatChunk);
+            {
+                // String.compareTo of the two chunks
+                int length = Math.min(thisChunkLength, thatChunkLength);
+                result = compareChars(o1, thisMarker, o2, thatMarker, length);
+                if (result == 0)
+                    result = thisChunkLength - thatChunkLength;
+            }
 
             if (result != 0)
                 return result;
+
+            thisMarker = thisEnd;
+            thatMarker = thatEnd;
         }
 
         return s1Length - s2Length;
     }
 
-    private static String getChunk(String s, int slength, int marker)
+    private static int compareChars(String s1, int offset1, String s2, int offset2, int length)
     {
-        StringBuilder chunk = new StringBuilder();
-        char c = s.charAt(marker);
-        chunk.append(c);
-        marker++;
-        if (isDigit(c))
-            while (marker < slength)
-            {
-                c = s.charAt(marker);
-                if (!isDigit(c))
-                    break;
-                chunk.append(c);
-                marker++;
-            }
-        else
-            while (marker < slength)
-            {
-                c = s.charAt(marker);
-                if (isDigit(c))
-                    break;
-                chunk.append(c);
-                marker++;
-            }
-        return chunk.toString();
+        for (int i = 0; i < length; i++)
+        {
+            int result = s1.charAt(offset1 + i) - s2.charAt(offset2 + i);
+            if (result != 0)
+                return result;
+        }
+
+        return 0;
+    }
+
+    private static int getChunkEnd(String s, int slength, int marker)
+    {
+        boolean digit = isDigit(s.charAt(marker));
+
+        for (marker++; marker < slength; marker++)
+        {
+            if (isDigit(s.charAt(marker)) != digit)
+                break;
+        }
+
+        return marker;
     }
 
     private static boolean isDigit(char ch)
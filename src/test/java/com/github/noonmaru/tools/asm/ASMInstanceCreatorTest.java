@@ -18,6 +18,9 @@ package com.github.noonmaru.tools.asm;
 
 import org.junit.Test;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
 public class ASMInstanceCreatorTest
 {
 
@@ -26,4 +29,64 @@ public class ASMInstanceCreatorTest
     {
         ASMInstanceCreator.create(ASMInstanceCreatorTest.class).get();
     }
-}
\ No newline at end of file
+
+    @Test
+    public void createCached()
+    {
+        assertSame(ASMInstanceCreator.create(Value.class), ASMInstanceCreator.create(Value.class));
+        assertSame(ASMInstanceCreator.createInvoker(Value.class, String.class, int.class), ASMInstanceCreator.createInvoker(Value.class, String.class, int.class));
+    }
+
+    @Test
+    public void createWithArguments()
+    {
+        assertEquals("a:1", ASMInstanceCreator.createInvoker(Value.class, String.class, int.class).newInstance("a", 1).text);
+        assertEquals("b:2", ASMInstanceCreator.createBiFunction(Value.class, String.class, int.class).apply("b", 2).text);
+        assertEquals("int:3", ASMInstanceCreator.createFunction(Value.class, int.class).apply(3).text);
+        assertEquals("int:4", ASMInstanceCreator.createIntFunction(Value.class).apply(4).text);
+        assertEquals("long:5", ASMInstanceCreator.createLongFunction(Value.class).apply(5L).text);
+        assertEquals("double:6.5", ASMInstanceCreator.createDoubleFunction(Value.class).apply(6.5D).text);
+        assertEquals("a:b:c", ASMInstanceCreator.createInvoker(Value.class, String.class, String.class, String.class).newInstance("a", "b", "c").text);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void createWithoutConstructor()
+    {
+        ASMInstanceCreator.createInvoker(Value.class, Object.class);
+    }
+
+    public static class Value
+    {
+        final String text;
+
+        public Value()
+        {
+            this.text = "";
+        }
+
+        public Value(int i)
+        {
+            this.text = "int:" + i;
+        }
+
+        public Value(long l)
+        {
+            this.text = "long:" + l;
+        }
+
+        public Value(double d)
+        {
+            this.text = "double:" + d;
+        }
+
+        public Value(String s, int i)
+        {
+            this.text = s + ":" + i;
+        }
+
+        public Value(String a, String b, String c)
+        {
+            this.text = a + ":" + b + ":" + c;
+        }
+    }
+}
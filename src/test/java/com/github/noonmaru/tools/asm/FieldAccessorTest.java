@@ -0,0 +1,118 @@
+/*
+ * Copyright (c) 2019 Noonmaru
+ *
+ * Licensed under the General Public License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://opensource.org/licenses/gpl-2.0.php
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.github.noonmaru.tools.asm;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+public class FieldAccessorTest
+{
+
+    @Test
+    public void create()
+    {
+        assertSame(FieldAccessor.create(Sample.class), FieldAccessor.create(Sample.class));
+    }
+
+    @Test
+    public void instanceFields()
+    {
+        FieldAccessor accessor = FieldAccessor.create(Sample.class);
+        Sample sample = new Sample();
+
+        int number = accessor.getIndex("number");
+        accessor.setInt(sample, number, 3);
+        assertEquals(3, sample.number);
+        assertEquals(3, accessor.get(sample, number));
+
+        accessor.set(sample, number, 4);
+        assertEquals(4, accessor.getInt(sample, number));
+
+        int text = accessor.getIndex("text");
+        accessor.set(sample, text, "text");
+        assertEquals("text", accessor.get(sample, text));
+
+        int hidden = accessor.getIndex("hidden");
+        accessor.setDouble(sample, hidden, 1.5D);
+        assertEquals(1.5D, accessor.getDouble(sample, hidden), 0.0D);
+    }
+
+    @Test
+    public void staticFields()
+    {
+        FieldAccessor accessor = FieldAccessor.create(Sample.class);
+        int counter = accessor.getIndex("counter");
+
+        accessor.setLong(null, counter, 7L);
+        assertEquals(7L, Sample.counter);
+        assertEquals(7L, accessor.get(null, counter));
+    }
+
+    @Test
+    public void widening()
+    {
+        FieldAccessor accessor = FieldAccessor.create(Sample.class);
+        Sample sample = new Sample();
+
+        int total = accessor.getIndex("total");
+        accessor.set(sample, total, 5);
+        assertEquals(5L, sample.total);
+
+        accessor.set(sample, total, 'a');
+        assertEquals(97L, sample.total);
+
+        int number = accessor.getIndex("number");
+        assertThrows(() -> accessor.set(sample, total, 1.5D));
+        assertThrows(() -> accessor.set(sample, number, null));
+        assertThrows(() -> accessor.set(sample, accessor.getIndex("text"), 1));
+
+        accessor.set(sample, accessor.getIndex("text"), null);
+        assertEquals(null, sample.text);
+    }
+
+    private static void assertThrows(Runnable runnable)
+    {
+        try
+        {
+            runnable.run();
+            fail("Expected IllegalArgumentException");
+        }
+        catch (IllegalArgumentException e)
+        {
+            // like Field.set
+        }
+    }
+
+    public static class Base
+    {
+        public int number;
+
+        private double hidden;
+    }
+
+    public static class Sample extends Base
+    {
+        public static long counter;
+
+        public String text;
+
+        public long total;
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright (c) 2019 Noonmaru
+ *
+ * Licensed under the General Public License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://opensource.org/licenses/gpl-2.0.php
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.github.noonmaru.tools.gson.config;
+
+import com.github.noonmaru.tools.gson.JsonIO;
+import com.google.gson.JsonObject;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class BulkConfigLoaderTest
+{
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void loadAll() throws Exception
+    {
+        File directory = folder.newFolder();
+        write(new File(directory, "a.json"), "{\"value\": 1}");
+        write(new File(directory, "b.json"), "{\"value\": ");
+        write(new File(directory, "c.json"), "{\"value\": 3}");
+
+        BulkConfigLoader.Result<JsonConfiguration> result = BulkConfigLoader.loadAll(directory);
+
+        assertEquals(Arrays.asList(new File(directory, "a.json"), new File(directory, "c.json")), Arrays.asList(result.getResults().keySet().toArray()));
+        assertEquals(1, result.getResults().get(new File(directory, "a.json")).getInt("value"));
+        assertEquals(3, result.getResults().get(new File(directory, "c.json")).getInt("value"));
+        assertEquals(1, result.getErrors().size());
+        assertTrue(result.getErrors().containsKey(new File(directory, "b.json")));
+    }
+
+    @Test
+    public void bindAllWritesBackDefaults() throws Exception
+    {
+        File directory = folder.newFolder();
+        File complete = new File(directory, "complete.json");
+        File partial = new File(directory, "partial.json");
+        File missing = new File(directory, "missing.json");
+        File broken = new File(directory, "broken.json");
+        File unwritable = new File(new File(directory, "no-such-directory"), "settings.json");
+
+        write(complete, "{\"value\": 7, \"name\": \"complete\"}");
+        write(partial, "{\"value\": 8}");
+        write(broken, "[1, 2");
+
+        long completeModified = complete.lastModified();
+        BulkConfigLoader.Result<Settings> result = BulkConfigLoader.bindAll(Arrays.asList(complete, partial, missing, broken, unwritable), file -> new Settings(), ForkJoinPool.commonPool());
+
+        assertEquals(7, result.getResults().get(complete).value);
+        assertEquals("complete", result.getResults().get(complete).name);
+        assertEquals(8, result.getResults().get(partial).value);
+        assertEquals(3, result.getResults().get(missing).value);
+        assertFalse(result.getResults().containsKey(broken));
+
+        // defaults are written back where they were missing, complete files are left alone
+        JsonObject written = JsonIO.load(partial);
+        assertEquals(8, written.get("value").getAsInt());
+        assertEquals("default", written.get("name").getAsString());
+        assertEquals(3, JsonIO.<JsonObject>load(missing).get("value").getAsInt());
+        assertEquals(completeModified, complete.lastModified());
+
+        // a failed write-back is an error, the bound object is still a result
+        assertEquals(2, result.getErrors().size());
+        assertTrue(result.getErrors().containsKey(broken));
+        assertTrue(result.getErrors().containsKey(unwritable));
+        assertEquals(3, result.getResults().get(unwritable).value);
+    }
+
+    private static void write(File file, String text) throws Exception
+    {
+        Files.write(file.toPath(), text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static class Settings
+    {
+        @Config
+        public int value = 3;
+
+        @Config
+        public String name = "default";
+    }
+}
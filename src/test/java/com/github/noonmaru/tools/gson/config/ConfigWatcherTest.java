@@ -0,0 +1,98 @@
+/*
+ * Copyright (c) 2019 Noonmaru
+ *
+ * Licensed under the General Public License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://opensource.org/licenses/gpl-2.0.php
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.github.noonmaru.tools.gson.config;
+
+import com.github.noonmaru.tools.gson.JsonIO;
+import com.google.gson.JsonObject;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+
+public class ConfigWatcherTest
+{
+    private static final long DEBOUNCE = 200L;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void debounceAndOwnWrites() throws Exception
+    {
+        File file = folder.newFile("config.json");
+        write(file, 0);
+
+        AtomicInteger reloads = new AtomicInteger();
+        AtomicReference<JsonConfiguration> loaded = new AtomicReference<>();
+
+        try (ConfigWatcher watcher = new ConfigWatcher(DEBOUNCE, TimeUnit.MILLISECONDS))
+        {
+            watcher.watch(file, config -> {
+                loaded.set(config);
+                reloads.incrementAndGet();
+            });
+
+            // a burst of external writes is one reload of the last content
+            for (int i = 1; i <= 5; i++)
+                write(file, i);
+
+            awaitReloads(reloads, 1);
+            assertEquals(5, loaded.get().getInt("value"));
+
+            // what this process saved itself is not reloaded
+            JsonObject json = new JsonObject();
+            json.addProperty("value", 6);
+            JsonIO.save(json, file);
+            Thread.sleep(DEBOUNCE * 5);
+            assertEquals(1, reloads.get());
+
+            write(file, 7);
+            awaitReloads(reloads, 2);
+            assertEquals(7, loaded.get().getInt("value"));
+
+            watcher.unwatch(file);
+            write(file, 8);
+            Thread.sleep(DEBOUNCE * 5);
+            assertEquals(2, reloads.get());
+        }
+    }
+
+    private static void write(File file, int value) throws Exception
+    {
+        Files.write(file.toPath(), ("{\"value\": " + value + "}").getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void awaitReloads(AtomicInteger reloads, int expected) throws InterruptedException
+    {
+        long deadline = System.currentTimeMillis() + 10000L;
+
+        while (reloads.get() < expected && System.currentTimeMillis() < deadline)
+            Thread.sleep(20L);
+
+        // give a second, wrongly debounced reload the chance to show up
+        Thread.sleep(DEBOUNCE * 3);
+        assertEquals(expected, reloads.get());
+    }
+}
@@ -0,0 +1,56 @@
+/*
+ * Copyright (c) 2019 Noonmaru
+ *
+ * Licensed under the General Public License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://opensource.org/licenses/gpl-2.0.php
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.github.noonmaru.tools.gson.config;
+
+import com.github.noonmaru.tools.gson.JsonFormat;
+import com.github.noonmaru.tools.gson.JsonIO;
+import com.google.gson.JsonObject;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class FrozenConfigurationTest
+{
+    private static final String SOURCE = "{\"int\":7,\"long\":12345678901,\"double\":2.5,\"scale\":1.10,\"exponent\":1e3,"
+            + "\"big\":12345678901234567890,\"text\":\"a\",\"flag\":true,"
+            + "\"list\":[1,1.10,\"b\",{\"x\":1e-7}],\"child\":{\"price\":19.90,\"child\":{\"n\":100000000000000000000000}}}";
+
+    @Test
+    public void roundTrip()
+    {
+        JsonObject json = JsonIO.load(SOURCE);
+        FrozenConfiguration frozen = new JsonConfiguration(json).freeze();
+
+        assertEquals(SOURCE, JsonIO.save(frozen.toJson(), JsonFormat.COMPACT));
+        assertEquals(SOURCE, JsonIO.save(frozen.thaw().getJson(), JsonFormat.COMPACT));
+    }
+
+    @Test
+    public void sameAsJsonConfiguration()
+    {
+        JsonConfiguration config = new JsonConfiguration(JsonIO.load(SOURCE));
+        FrozenConfiguration frozen = config.freeze();
+
+        for (String name : new String[]{"int", "long", "double", "scale", "exponent", "big", "child/price", "child.child.n"})
+        {
+            assertEquals(name, config.getString(name), frozen.getString(name));
+            assertEquals(name, config.getNumber(name).toString(), frozen.getNumber(name).toString());
+            assertEquals(name, config.getLong(name), frozen.getLong(name));
+            assertEquals(name, Double.doubleToLongBits(config.getDouble(name)), Double.doubleToLongBits(frozen.getDouble(name)));
+        }
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright (c) 2019 Noonmaru
+ *
+ * Licensed under the General Public License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://opensource.org/licenses/gpl-2.0.php
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.github.noonmaru.tools.gson.config;
+
+import com.google.gson.JsonObject;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class JsonMacroTest
+{
+
+    @Test
+    public void nestedReferences()
+    {
+        JsonConfiguration config = new JsonConfiguration();
+        config.set("a", 2);
+        config.set("b", 3);
+        config.set("sum", "[a]+[b]");
+        config.set("label", "total [sum]");
+
+        assertEquals("total 2+3 = 5", JsonMacro.process("[label] = EVAL([sum])", config));
+
+        config.set("a", 10);
+        assertEquals("total 10+3 = 13", JsonMacro.process("[label] = EVAL([sum])", config));
+    }
+
+    @Test
+    public void referenceCycle()
+    {
+        JsonConfiguration config = new JsonConfiguration();
+        config.set("a", "x[b]");
+        config.set("b", "y[a]");
+        config.set("self", "[self]");
+
+        assertCycle("[a]", config, "[a] -> [b] -> [a]");
+        assertCycle("[self]", config, "[self] -> [self]");
+
+        // a reference used twice side by side is not a cycle
+        config.set("b", "y");
+        assertEquals("xy xy", JsonMacro.process("[a] [a]", config));
+    }
+
+    private static void assertCycle(String s, JsonConfiguration config, String chain)
+    {
+        try
+        {
+            JsonMacro.process(s, config);
+            fail("No cycle detected in " + s);
+        }
+        catch (IllegalArgumentException e)
+        {
+            assertTrue(e.getMessage(), e.getMessage().endsWith(chain));
+        }
+    }
+
+    @Test
+    public void memoSeesEveryWrite()
+    {
+        JsonObject json = new JsonObject();
+        json.addProperty("v", 1);
+        json.add("child", new JsonObject());
+
+        JsonConfiguration first = new JsonConfiguration(json);
+        JsonConfiguration second = new JsonConfiguration(json);
+
+        assertEquals("1", JsonMacro.process("[v]", first));
+
+        second.set("v", 2);
+        assertEquals("2", JsonMacro.process("[v]", first));
+
+        first.getJson().addProperty("v", 3);
+        assertEquals("3", JsonMacro.process("[v]", first));
+
+        first.getConfig("child").set("w", 4);
+        assertEquals("3 4", JsonMacro.process("[v] [child/w]", first));
+
+        second.getConfig("child").set("w", 5);
+        assertEquals("3 5", JsonMacro.process("[v] [child/w]", first));
+    }
+
+    @Test
+    public void parallelReusesView()
+    {
+        JsonConfiguration config = new JsonConfiguration();
+        config.set("a", 1);
+        JsonConfiguration child = config.createConfig("child");
+        child.set("b", "[../a]");
+
+        JsonConfiguration view = config.readOnlyView();
+        assertSame(view, config.readOnlyView());
+        assertSame(view.getConfig("child"), child.readOnlyView());
+        assertEquals(Arrays.asList("1", "1 1"), JsonMacro.processAllParallel(Arrays.asList("[b]", "[../a] [b]"), child));
+
+        child.set("c", 2);
+        assertNotSame(view, config.readOnlyView());
+        assertEquals(Collections.singletonList("1 2"), JsonMacro.processAllParallel(Collections.singletonList("[b] [c]"), child));
+    }
+}
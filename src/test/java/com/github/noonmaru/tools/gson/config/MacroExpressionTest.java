@@ -0,0 +1,118 @@
+/*
+ * Copyright (c) 2019 Noonmaru
+ *
+ * Licensed under the General Public License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://opensource.org/licenses/gpl-2.0.php
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.github.noonmaru.tools.gson.config;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class MacroExpressionTest
+{
+    private static final String[] EXPRESSIONS = {
+            "$0 + $1", "$0 - $1", "$0 * $1", "$0 / $1", "$0 % $1",
+            "$0 < $1", "$0 <= $1", "$0 > $1", "$0 >= $1",
+            "$0 == $1", "$0 != $1", "$0 === $1", "$0 !== $1",
+            "$0 && $1", "$0 || $1", "!$0", "!!$1", "-$0", "+$1",
+            "$0 ? $1 : $0 - $1", "$0 > $1 && $1", "$0 < $1 || $0 * 2",
+            "($0 && $1) + 1", "!($0 || $1) ? 1 : 2",
+            "abs($0)", "ceil($0)", "floor($1)", "round($0)", "sqrt($0)", "cbrt($1)", "exp($1)",
+            "log($0)", "log10($0)", "sin($0)", "cos($1)", "tan($0)", "asin($1)", "acos($1)", "atan($0)",
+            "pow($0, $1)", "atan2($0, $1)", "min($0)", "max($1)", "min($0, $1)", "max($0, $1, 3)",
+            "Math.min($0, $1, -1) + Math.PI * Math.E", "$0 % $1 == 0 ? NaN : Infinity", "min() + max($0)", "$0 - max()"
+    };
+
+    private static final double[] VALUES = {
+            0D, -0D, 1D, -1D, 2.5D, -7D, 3D, -3D, 7D, 0.5D, -0.4D, -0.5D, 0.49999999999999994D, 4503599627370497D, 1e300D, Double.NaN, Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY
+    };
+
+    @Test
+    public void compiledMatchesInterpreted()
+    {
+        Random random = new Random(0);
+
+        for (String source : EXPRESSIONS)
+        {
+            MacroExpression interpreted = MacroExpression.parse(source, true);
+            MacroExpression compiled = MacroExpression.parse(source, true);
+
+            for (int i = 0; i < MacroExpression.COMPILE_THRESHOLD; i++)
+                compiled.evaluate(new double[]{1D, 2D});
+
+            assertTrue(source, compiled.isCompiled());
+
+            for (double a : VALUES)
+            {
+                for (double b : VALUES)
+                    assertSame(source, interpreted, compiled, a, b);
+            }
+
+            for (int i = 0; i < 1000; i++)
+                assertSame(source, interpreted, compiled, random.nextInt(21) - 10, (random.nextDouble() - 0.5D) * 100D);
+        }
+    }
+
+    private static void assertSame(String source, MacroExpression interpreted, MacroExpression compiled, double a, double b)
+    {
+        double expected = interpreted.evaluate(new double[]{a, b});
+        double actual = compiled.evaluate(new double[]{a, b});
+
+        // compare treats NaN as equal to itself and tells 0 from -0
+        assertEquals(source + " with " + a + ", " + b, 0, Double.compare(expected, actual));
+    }
+
+    @Test
+    public void javaScriptSemantics()
+    {
+        assertEquals(3, evaluate("2 && 3"));
+        assertEquals(0, evaluate("0 && 3"));
+        assertEquals(5, evaluate("0 || 5"));
+        assertEquals(2, evaluate("2 || 5"));
+        assertEquals(true, evaluate("1 < 2 && 2 < 3"));
+        assertEquals(-1, evaluate("-7 % 3"));
+        assertEquals(1, evaluate("7 % -3"));
+        assertEquals(-1.5D, evaluate("-5.5 % 2"));
+        assertEquals(false, evaluate("NaN == NaN"));
+        assertEquals(true, evaluate("NaN != NaN"));
+        assertEquals(Double.NaN, evaluate("0 / 0"));
+        assertEquals(Double.POSITIVE_INFINITY, evaluate("1 / 0"));
+        assertEquals(Double.POSITIVE_INFINITY, evaluate("min()"));
+        assertEquals(Double.NEGATIVE_INFINITY, evaluate("max()"));
+        assertEquals(4, evaluate("max(4)"));
+        assertEquals(1, evaluate("min(3, 1, 2)"));
+        assertEquals(3, evaluate("round(2.5)"));
+        assertEquals(-2, evaluate("round(-2.5)"));
+        assertEquals(0, evaluate("round(0.49999999999999994)"));
+        assertEquals(4503599627370497L, evaluate("round(4503599627370497)"));
+        assertEquals(Double.NEGATIVE_INFINITY, evaluate("1 / round(-0.4)"));
+        assertEquals(Double.NEGATIVE_INFINITY, evaluate("1 / round(-0.5)"));
+        assertEquals(Double.NaN, evaluate("round(NaN)"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void wrongArity()
+    {
+        MacroExpression.parse("pow(2)", false);
+    }
+
+    private static Object evaluate(String source)
+    {
+        return MacroExpression.parse(source, false).evaluate();
+    }
+}